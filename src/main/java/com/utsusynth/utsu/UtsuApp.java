@@ -5,6 +5,8 @@ import java.io.InputStream;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.utsusynth.utsu.controller.UtsuController;
+import com.utsusynth.utsu.engine.EngineModule;
+import com.utsusynth.utsu.engine.RenderScheduler;
 import com.utsusynth.utsu.model.ModelModule;
 import com.utsusynth.utsu.view.ViewModule;
 import javafx.application.Application;
@@ -33,8 +35,14 @@ public class UtsuApp extends Application {
         }
 
         // Set up Guice.
-        Injector injector =
-                Guice.createInjector(new UtsuModule(), new ModelModule(), new ViewModule());
+        // Render with one thread per processor unless a thread count is explicitly requested.
+        int numRenderThreads =
+                Integer.getInteger("utsu.renderThreads", RenderScheduler.getDefaultNumThreads());
+        Injector injector = Guice.createInjector(
+                new UtsuModule(),
+                new EngineModule(numRenderThreads),
+                new ModelModule(),
+                new ViewModule());
         FXMLLoader loader = injector.getInstance(FXMLLoader.class);
 
         // Construct scene.
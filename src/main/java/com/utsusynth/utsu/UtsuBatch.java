@@ -0,0 +1,242 @@
+package com.utsusynth.utsu;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import com.google.common.base.Optional;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.utsusynth.utsu.common.exception.ErrorLogger;
+import com.utsusynth.utsu.engine.Engine;
+import com.utsusynth.utsu.engine.EngineModule;
+import com.utsusynth.utsu.engine.RenderScheduler;
+import com.utsusynth.utsu.files.PitchTrackReader;
+import com.utsusynth.utsu.files.PitchTrackWriter;
+import com.utsusynth.utsu.files.Ust12Reader;
+import com.utsusynth.utsu.files.Ust20Reader;
+import com.utsusynth.utsu.model.ModelModule;
+import com.utsusynth.utsu.model.song.Song;
+
+/**
+ * Renders USTs to WAV files without opening a window. Several songs can render at once, but the
+ * total number of render threads never goes above the requested number of workers.
+ *
+ * <p>
+ * Usage: UtsuBatch [--workers N] [--songs N] [--export-pitch cents|hz] [--import-pitch DIR]
+ * (UST file or directory) (output directory)
+ *
+ * <p>
+ * --export-pitch writes each song's pitch as an f0 track next to its WAV file. --import-pitch
+ * overrides the pitch of each song that has an f0 track of the same name in DIR.
+ */
+public class UtsuBatch {
+    private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
+
+    private final Ust12Reader ust12Reader;
+    private final Ust20Reader ust20Reader;
+    private final PitchTrackReader pitchTrackReader;
+    private final PitchTrackWriter pitchTrackWriter;
+    private final Optional<PitchTrackWriter.Unit> pitchExportUnit;
+    private final Optional<File> pitchImportDir;
+    private final BlockingQueue<Engine> engines; // One engine per song rendering at once.
+    private final Object loadLock = new Object(); // Voicebanks are shared between songs.
+
+    private UtsuBatch(
+            Injector injector,
+            int numSongsAtOnce,
+            Optional<PitchTrackWriter.Unit> pitchExportUnit,
+            Optional<File> pitchImportDir) {
+        this.ust12Reader = injector.getInstance(Ust12Reader.class);
+        this.ust20Reader = injector.getInstance(Ust20Reader.class);
+        this.pitchTrackReader = injector.getInstance(PitchTrackReader.class);
+        this.pitchTrackWriter = injector.getInstance(PitchTrackWriter.class);
+        this.pitchExportUnit = pitchExportUnit;
+        this.pitchImportDir = pitchImportDir;
+        this.engines = new ArrayBlockingQueue<>(numSongsAtOnce);
+        for (int i = 0; i < numSongsAtOnce; i++) {
+            engines.add(injector.getInstance(Engine.class));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int numWorkers = RenderScheduler.getDefaultNumThreads();
+        int numSongsAtOnce = -1; // Decided once the number of songs is known.
+        Optional<PitchTrackWriter.Unit> pitchExportUnit = Optional.absent();
+        Optional<File> pitchImportDir = Optional.absent();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--workers") && i + 1 < args.length) {
+                numWorkers = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--songs") && i + 1 < args.length) {
+                numSongsAtOnce = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--export-pitch") && i + 1 < args.length) {
+                pitchExportUnit = Optional.of(
+                        args[++i].equalsIgnoreCase("hz") ? PitchTrackWriter.Unit.HERTZ
+                                : PitchTrackWriter.Unit.CENTS_FROM_NOTE);
+            } else if (args[i].equals("--import-pitch") && i + 1 < args.length) {
+                pitchImportDir = Optional.of(new File(args[++i]));
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.size() != 2) {
+            System.out.println(
+                    "Usage: UtsuBatch [--workers N] [--songs N] [--export-pitch cents|hz] "
+                            + "[--import-pitch DIR] (UST file or directory) (output directory)");
+            System.exit(2);
+        }
+        // Voicebanks and render tools are found relative to the working directory.
+        if (!new File("./assets").exists()) {
+            System.out.println("Current working directory: " + System.getProperty("user.dir"));
+            System.out.println("Please cd to JAR file's parent directory before running Utsu.");
+            System.exit(2);
+        }
+
+        List<File> ustFiles = findUstFiles(new File(paths.get(0)));
+        File outputDir = new File(paths.get(1));
+        if (ustFiles.isEmpty() || !(outputDir.isDirectory() || outputDir.mkdirs())) {
+            System.out.println("Error: Nothing to render, or nowhere to put it.");
+            System.exit(2);
+        }
+        if (numSongsAtOnce < 0) {
+            numSongsAtOnce = ustFiles.size();
+        }
+        numSongsAtOnce = Math.min(numSongsAtOnce, Math.min(numWorkers, ustFiles.size()));
+        int numThreadsPerSong = numWorkers / numSongsAtOnce;
+
+        Engine.ProgressListener ignoreProgress = progress -> {
+            // Progress is printed per song rather than per note.
+        };
+        Injector injector = Guice.createInjector(
+                new EngineModule(numThreadsPerSong),
+                new ModelModule(),
+                binder -> binder.bind(Engine.ProgressListener.class).toInstance(ignoreProgress));
+        UtsuBatch batch =
+                new UtsuBatch(injector, numSongsAtOnce, pitchExportUnit, pitchImportDir);
+
+        ExecutorService songExecutor = Executors.newFixedThreadPool(numSongsAtOnce);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (File ustFile : ustFiles) {
+            File wavFile = new File(outputDir, getBaseName(ustFile) + ".wav");
+            results.add(songExecutor.submit(() -> batch.render(ustFile, wavFile)));
+        }
+        songExecutor.shutdown();
+        songExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        int numFailed = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                numFailed += result.get() ? 0 : 1;
+            } catch (Exception e) {
+                errorLogger.logError(e);
+                numFailed++;
+            }
+        }
+        System.out.println(
+                "Rendered " + (ustFiles.size() - numFailed) + " of " + ustFiles.size()
+                        + " songs.");
+        System.exit(numFailed == 0 ? 0 : 1);
+    }
+
+    private boolean render(File ustFile, File wavFile) throws InterruptedException {
+        Song song;
+        try {
+            synchronized (loadLock) {
+                song = loadSong(ustFile);
+                song.getVoicebank(); // Load the voicebank before rendering starts.
+            }
+            if (pitchImportDir.isPresent()) {
+                File pitchFile = new File(pitchImportDir.get(), getBaseName(ustFile) + ".f0");
+                if (pitchFile.exists()) {
+                    try (InputStream in = new FileInputStream(pitchFile)) {
+                        pitchTrackReader.readTrack(in, song);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            errorLogger.logError(e);
+            System.out.println("Error: Unable to open " + ustFile.getName());
+            return false;
+        }
+
+        Engine engine = engines.take();
+        try {
+            if (engine.renderWav(song, wavFile) && wavFile.exists()) {
+                System.out.println("Exported to file: " + wavFile.getPath());
+                return !pitchExportUnit.isPresent() || exportPitch(song, ustFile, wavFile);
+            }
+            System.out.println("Export of " + ustFile.getName() + " produced no output.");
+            return false;
+        } finally {
+            engines.put(engine);
+        }
+    }
+
+    private boolean exportPitch(Song song, File ustFile, File wavFile) {
+        File pitchFile = new File(wavFile.getParentFile(), getBaseName(ustFile) + ".f0");
+        try (OutputStream out = new FileOutputStream(pitchFile)) {
+            pitchTrackWriter.writeTrack(song, out, pitchExportUnit.get());
+        } catch (IOException e) {
+            errorLogger.logError(e);
+            System.out.println("Error: Unable to export pitch of " + ustFile.getName());
+            return false;
+        }
+        System.out.println("Exported to file: " + pitchFile.getPath());
+        return true;
+    }
+
+    private Song loadSong(File file) throws IOException {
+        byte[] bytes = FileUtils.readFileToByteArray(file);
+        String charset = "UTF-8";
+        try {
+            Charset.forName("UTF-8").newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+        } catch (CharacterCodingException e) {
+            charset = "SJIS";
+        }
+        String content = new String(bytes, charset);
+        if (content.contains("UST Version2.0")) {
+            return ust20Reader.loadSong(content);
+        }
+        // If no version found, assume UST 1.2 for now.
+        return ust12Reader.loadSong(content);
+    }
+
+    private static List<File> findUstFiles(File input) {
+        List<File> ustFiles = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] children = input.listFiles((dir, name) -> name.toLowerCase().endsWith(".ust"));
+            if (children != null) {
+                Arrays.sort(children);
+                ustFiles.addAll(Arrays.asList(children));
+            }
+        } else if (input.isFile()) {
+            ustFiles.add(input);
+        }
+        return ustFiles;
+    }
+
+    private static String getBaseName(File file) {
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+}
@@ -14,10 +14,7 @@ import com.utsusynth.utsu.common.quantize.Quantizer;
 import com.utsusynth.utsu.common.quantize.Scaler;
 import com.utsusynth.utsu.controller.common.IconManager;
 import com.utsusynth.utsu.engine.Engine;
-import com.utsusynth.utsu.engine.ExternalProcessRunner;
-import com.utsusynth.utsu.engine.FrqGenerator;
-import com.utsusynth.utsu.engine.Resampler;
-import com.utsusynth.utsu.engine.Wavtool;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 
 public class UtsuModule extends AbstractModule {
@@ -68,44 +65,8 @@ public class UtsuModule extends AbstractModule {
     }
 
     @Provides
-    private Engine provideEngine(Resampler resampler, Wavtool wavtool, StatusBar statusBar) {
-        String os = System.getProperty("os.name").toLowerCase();
-        String resamplerPath;
-        String wavtoolPath;
-        if (os.contains("win")) {
-            resamplerPath = "assets/win64/macres.exe";
-            wavtoolPath = "assets/win64/wavtool-yawu.exe";
-        } else if (os.contains("mac")) {
-            resamplerPath = "assets/Mac/macres";
-            wavtoolPath = "assets/Mac/wavtool-yawu";
-        } else {
-            resamplerPath = "assets/linux64/macres";
-            wavtoolPath = "assets/linux64/wavtool-yawu";
-        }
-        File resamplerFile = new File(resamplerPath);
-        File wavtoolFile = new File(wavtoolPath);
-        return new Engine(
-                resampler,
-                wavtool,
-                statusBar,
-                /* threadPoolSize= */ 10,
-                resamplerFile,
-                wavtoolFile);
-    }
-
-    @Provides
-    @Singleton
-    private FrqGenerator provideFrqGenerator(ExternalProcessRunner runner) {
-        String os = System.getProperty("os.name").toLowerCase();
-        String frqGeneratorPath;
-        if (os.contains("win")) {
-            frqGeneratorPath = "assets/win64/frq0003gen.exe";
-        } else if (os.contains("mac")) {
-            frqGeneratorPath = "assets/Mac/frq0003gen";
-        } else {
-            frqGeneratorPath = "assets/linux64/frq0003gen";
-        }
-        return new FrqGenerator(runner, new File(frqGeneratorPath), 256);
+    private Engine.ProgressListener provideProgressListener(StatusBar statusBar) {
+        return progress -> Platform.runLater(() -> statusBar.setProgress(progress));
     }
 
     @Provides
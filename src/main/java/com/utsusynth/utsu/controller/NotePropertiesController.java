@@ -380,7 +380,6 @@ public class NotePropertiesController implements Localizable {
                     newModulation,
                     newFlags);
             newData.add(newNoteData);
-            note.setConfigData(newNoteData);
         }
         callback.updateNotes(oldData.build(), newData.build());
         Stage currentStage = (Stage) root.getScene().getWindow();
@@ -11,10 +11,10 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnmappableCharacterException;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.function.DoubleSupplier;
 import org.apache.commons.io.FileUtils;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
@@ -23,7 +23,6 @@ import com.google.inject.Provider;
 import com.utsusynth.utsu.common.RegionBounds;
 import com.utsusynth.utsu.common.StatusBar;
 import com.utsusynth.utsu.common.data.MutateResponse;
-import com.utsusynth.utsu.common.data.NoteConfigData;
 import com.utsusynth.utsu.common.data.NoteData;
 import com.utsusynth.utsu.common.data.NoteUpdateData;
 import com.utsusynth.utsu.common.exception.ErrorLogger;
@@ -45,8 +44,10 @@ import com.utsusynth.utsu.files.Ust12Reader;
 import com.utsusynth.utsu.files.Ust12Writer;
 import com.utsusynth.utsu.files.Ust20Reader;
 import com.utsusynth.utsu.files.Ust20Writer;
-import com.utsusynth.utsu.model.song.NoteIterator;
+import com.utsusynth.utsu.model.song.Song;
 import com.utsusynth.utsu.model.song.SongContainer;
+import com.utsusynth.utsu.model.song.SongSnapshot;
+import com.utsusynth.utsu.model.song.TempoMap;
 import com.utsusynth.utsu.view.song.Piano;
 import com.utsusynth.utsu.view.song.SongCallback;
 import com.utsusynth.utsu.view.song.SongEditor;
@@ -79,6 +80,11 @@ import javafx.util.Duration;
 public class SongController implements EditorController, Localizable {
     private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
 
+    // Rough memory kept alive by undo actions for each note they hold on to, in bytes.
+    private static final long NOTE_BYTES = 4096; // A note in the editor, with its shapes and text.
+    private static final long SNAPSHOT_NOTE_BYTES = 512; // A copy of a note in a song snapshot.
+    private static final long CONFIG_BYTES = 128; // The config of a note.
+
     // User session data goes here.
     private EditorCallback callback;
 
@@ -183,15 +189,18 @@ public class SongController implements EditorController, Localizable {
     public void initialize() {
         songEditor.initialize(new SongCallback() {
             @Override
-            public void addNotes(List<NoteData> toAdd) {
+            public List<MutateResponse> replaceNotes(
+                    Set<Integer> positionsToRemove,
+                    List<NoteData> toAdd) {
                 onSongChange();
-                song.get().addNotes(toAdd);
-            }
-
-            @Override
-            public MutateResponse removeNotes(Set<Integer> positions) {
-                onSongChange();
-                return song.get().removeNotes(positions);
+                Song.Batch batch = song.get().startBatch();
+                for (int position : positionsToRemove) {
+                    batch.removeNote(position);
+                }
+                for (NoteData note : toAdd) {
+                    batch.addNote(note);
+                }
+                return batch.apply();
             }
 
             @Override
@@ -211,6 +220,24 @@ public class SongController implements EditorController, Localizable {
                 undoService.setMostRecentAction(redoAction, undoAction);
             }
 
+            @Override
+            public void recordAction(Runnable redoAction, Runnable undoAction, int numNotes) {
+                undoService.setMostRecentAction(redoAction, undoAction, numNotes * NOTE_BYTES);
+            }
+
+            @Override
+            public void recordMergeableAction(
+                    Object mergeKey,
+                    Runnable redoAction,
+                    Runnable undoAction,
+                    int numNotes) {
+                undoService.mergeMostRecentAction(
+                        mergeKey,
+                        redoAction,
+                        undoAction,
+                        numNotes * NOTE_BYTES);
+            }
+
             @Override
             public void openNoteProperties(RegionBounds regionBounds) {
                 openNotePropertiesEditor(regionBounds);
@@ -630,7 +657,7 @@ public class SongController implements EditorController, Localizable {
 
     /** Called whenever a Song is changed. */
     private void onSongChange() {
-        song.get().setRendered(RegionBounds.INVALID); // Invalidate rendered song cache.
+        engine.scheduleIdleRender(song.get()); // Waits until after the edit is made.
         if (callback != null) {
             callback.markChanged(true);
         }
@@ -656,28 +683,23 @@ public class SongController implements EditorController, Localizable {
             NotePropertiesController controller = (NotePropertiesController) loader.getController();
             controller.setData(song, regionBounds, (oldData, newData) -> {
                 Runnable redoAction = () -> {
-                    NoteIterator notes = song.get().getNoteIterator(regionBounds);
-                    Iterator<NoteConfigData> newDataIterator = newData.iterator();
-                    while (notes.hasNext() && newDataIterator.hasNext()) {
-                        notes.next().setConfigData(newDataIterator.next());
-                    }
+                    song.get().setNoteConfigs(regionBounds, newData);
                     onSongChange();
                     songEditor.selectRegion(regionBounds);
                     songEditor.refreshSelected();
                 };
                 Runnable undoAction = () -> {
-                    NoteIterator notes = song.get().getNoteIterator(regionBounds);
-                    Iterator<NoteConfigData> oldDataIterator = oldData.iterator();
-                    while (notes.hasNext() && oldDataIterator.hasNext()) {
-                        notes.next().setConfigData(oldDataIterator.next());
-                    }
+                    song.get().setNoteConfigs(regionBounds, oldData);
                     onSongChange();
                     songEditor.selectRegion(regionBounds);
                     songEditor.refreshSelected();
                 };
                 // Apply changes and save redo/undo for these changes.
                 redoAction.run();
-                undoService.setMostRecentAction(redoAction, undoAction);
+                undoService.setMostRecentAction(
+                        redoAction,
+                        undoAction,
+                        (oldData.size() + newData.size()) * CONFIG_BYTES);
             });
             propertiesWindow.setScene(new Scene(notePropertiesPane));
             propertiesWindow.showAndWait();
@@ -722,7 +744,13 @@ public class SongController implements EditorController, Localizable {
         RegionBounds regionToPlay = songEditor.getPlayableTrack();
 
         Function<Duration, Void> startPlaybackFn = duration -> {
-            DoubleProperty playbackX = songEditor.startPlayback(regionToPlay, duration);
+            // Playback can start while the rest of the song is still rendering.
+            playPauseIcon.setImage(iconManager.getImage(IconType.PAUSE_NORMAL));
+            playPauseIcon.setDisable(false);
+            DoubleProperty playbackX = songEditor.startPlayback(
+                    regionToPlay,
+                    duration,
+                    followTempo(songEditor.getPlaybackRegion(regionToPlay), duration.toMillis()));
             if (playbackX != null) {
                 // Implements autoscroll to follow playback bar.
                 playbackX.addListener(event -> {
@@ -737,15 +765,22 @@ public class SongController implements EditorController, Localizable {
         };
         Runnable endPlaybackFn = () -> {
             playPauseIcon.setImage(iconManager.getImage(IconType.PLAY_NORMAL));
+            songEditor.stopPlayback();
         };
 
-        // Disable the play button while rendering.
+        // Disable the play button until playback starts.
         playPauseIcon.setDisable(true);
 
         statusBar.setStatus("Rendering...");
         new Thread(() -> {
-            if (engine.startPlayback(song.get(), regionToPlay, startPlaybackFn, endPlaybackFn)) {
-                playPauseIcon.setImage(iconManager.getImage(IconType.PAUSE_NORMAL));
+            // The engine calls back from its audio thread, so hand the callbacks to JavaFX.
+            boolean hasOutput = engine.startPlayback(
+                    song.get(),
+                    regionToPlay,
+                    durationMs -> Platform.runLater(
+                            () -> startPlaybackFn.apply(Duration.millis(durationMs))),
+                    () -> Platform.runLater(endPlaybackFn));
+            if (hasOutput) {
                 Platform.runLater(() -> statusBar.setStatus("Render complete."));
             } else {
                 Platform.runLater(() -> statusBar.setStatus("Render produced no output."));
@@ -754,6 +789,25 @@ public class SongController implements EditorController, Localizable {
         }).start();
     }
 
+    // The playback bar crosses its region at a steady pace, so playback time is warped to make
+    // the bar speed up and slow down with any tempo changes.
+    private DoubleSupplier followTempo(RegionBounds playbackRegion, double durationMs) {
+        TempoMap tempoMap = song.get().getTempoMap();
+        double startMs = playbackRegion.getMinMs();
+        double lengthMs = playbackRegion.getMaxMs() - startMs;
+        if (song.get().getTempoChanges().isEmpty() || playbackRegion.equals(RegionBounds.INVALID)
+                || lengthMs <= 0) {
+            return engine::getPlaybackPositionMs;
+        }
+        double realStartMs = tempoMap.toRealMs(startMs);
+        double realLengthMs = tempoMap.toRealMs(startMs, lengthMs);
+        return () -> {
+            double elapsed = engine.getPlaybackPositionMs() / durationMs;
+            double positionMs = tempoMap.toPositionMs(realStartMs + elapsed * realLengthMs);
+            return (positionMs - startMs) / lengthMs * durationMs;
+        };
+    }
+
     private void pausePlayback() {
         engine.pausePlayback();
         songEditor.pausePlayback();
@@ -804,9 +858,11 @@ public class SongController implements EditorController, Localizable {
             propertiesWindow.initOwner(currentStage);
             BorderPane propertiesPane = loader.load(fxml);
             SongPropertiesController controller = (SongPropertiesController) loader.getController();
+            SongSnapshot oldSong = song.get().snapshot();
             controller.setData(song, engine, () -> {
                 // Should only be called after song changes are applied.
                 Platform.runLater(() -> {
+                    recordSongReplacement(oldSong, song.get().snapshot());
                     onSongChange();
                     refreshView();
                     statusBar.setStatus("Property changes applied.");
@@ -820,6 +876,21 @@ public class SongController implements EditorController, Localizable {
         }
     }
 
+    // Lets a change that replaced the whole song be undone by putting back the old song.
+    private void recordSongReplacement(SongSnapshot oldSong, SongSnapshot newSong) {
+        Runnable redoAction = () -> restoreSong(newSong);
+        Runnable undoAction = () -> restoreSong(oldSong);
+        // Snapshots share notes that didn't change, so this overestimates how much they take up.
+        long sizeBytes = (oldSong.getNumNotes() + newSong.getNumNotes()) * SNAPSHOT_NOTE_BYTES;
+        undoService.setMostRecentAction(redoAction, undoAction, sizeBytes);
+    }
+
+    private void restoreSong(SongSnapshot snapshot) {
+        song.setSong(song.get().restore(snapshot));
+        onSongChange();
+        refreshView();
+    }
+
     @Override
     public void undo() {
         undoService.undo();
@@ -909,7 +980,9 @@ public class SongController implements EditorController, Localizable {
 
                 // Read song from plugin output.
                 String output = FileUtils.readFileToString(pluginFile, "SJIS");
+                SongSnapshot oldSong = song.get().snapshot();
                 song.setSong(ust12Reader.readFromPlugin(headers, songString, output));
+                recordSongReplacement(oldSong, song.get().snapshot());
                 onSongChange();
                 refreshView();
 
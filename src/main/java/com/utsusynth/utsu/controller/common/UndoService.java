@@ -1,81 +1,176 @@
 package com.utsusynth.utsu.controller.common;
 
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyLongProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleLongProperty;
 
-/** A class that keeps track of the most recent actions and how to undo them. */
+/**
+ * A class that keeps track of the most recent actions and how to undo them. Rather than keeping a
+ * fixed number of actions, the oldest actions are forgotten once the actions being kept would take
+ * up more than a set amount of memory.
+ */
 public class UndoService {
-    private static final int MAX_STACK_SIZE = 20;
+    /** How much memory actions are assumed to take up if no size is given. */
+    public static final long DEFAULT_ACTION_BYTES = 1024;
+    private static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    private final long maxBytes;
 
     // Keeps track of whether there are any tasks that can be undone/redone.
     private BooleanProperty canUndo;
     private BooleanProperty canRedo;
+    private SimpleLongProperty footprint; // Approximate memory used by all actions, in bytes.
+
+    private LinkedList<Action> prevActions;
+    private LinkedList<Action> nextActions;
+    private boolean canMerge; // Whether the latest action was just recorded.
+
+    // Any number of actions that are done and undone as one.
+    private static class Action {
+        private final List<Runnable> redoActions;
+        private final List<Runnable> undoActions;
+        private final Optional<Object> mergeKey;
+        private long sizeBytes;
+
+        private Action(Runnable redoAction, Runnable undoAction, long sizeBytes, Object mergeKey) {
+            this.redoActions = Lists.newArrayList(redoAction);
+            this.undoActions = Lists.newArrayList(undoAction);
+            this.sizeBytes = sizeBytes;
+            this.mergeKey = Optional.fromNullable(mergeKey);
+        }
 
-    private LinkedList<Runnable> prevRedoActions;
-    private LinkedList<Runnable> prevUndoActions;
-    private LinkedList<Runnable> nextRedoActions;
-    private LinkedList<Runnable> nextUndoActions;
+        private void redo() {
+            for (Runnable redoAction : redoActions) {
+                redoAction.run();
+            }
+        }
+
+        private void undo() {
+            for (Runnable undoAction : Lists.reverse(undoActions)) {
+                undoAction.run();
+            }
+        }
+    }
 
     public UndoService() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /** @param maxBytes Roughly how much memory the actions being kept may take up. */
+    public UndoService(long maxBytes) {
+        this.maxBytes = maxBytes;
         canUndo = new SimpleBooleanProperty(false);
         canRedo = new SimpleBooleanProperty(false);
-        prevRedoActions = new LinkedList<>();
-        prevUndoActions = new LinkedList<>();
-        nextRedoActions = new LinkedList<>();
-        nextUndoActions = new LinkedList<>();
+        footprint = new SimpleLongProperty(0);
+        prevActions = new LinkedList<>();
+        nextActions = new LinkedList<>();
+        canMerge = false;
     }
 
     /** Undo the most recent action. */
     public void undo() {
-        if (!prevRedoActions.isEmpty() && !prevUndoActions.isEmpty()) {
-            prevUndoActions.getLast().run();
-            nextRedoActions.addLast(prevRedoActions.pollLast());
-            nextUndoActions.addLast(prevUndoActions.pollLast());
+        if (!prevActions.isEmpty()) {
+            prevActions.getLast().undo();
+            nextActions.addLast(prevActions.pollLast());
         }
-        canUndo.set(!prevRedoActions.isEmpty() && !prevUndoActions.isEmpty());
-        canRedo.set(!nextRedoActions.isEmpty() && !nextUndoActions.isEmpty());
+        canMerge = false;
+        updateProperties();
     }
 
     /** Redo the most recent undo action. */
     public void redo() {
-        if (!nextRedoActions.isEmpty() && !nextUndoActions.isEmpty()) {
-            nextRedoActions.getLast().run();
-            prevRedoActions.addLast(nextRedoActions.pollLast());
-            prevUndoActions.addLast(nextUndoActions.pollLast());
+        if (!nextActions.isEmpty()) {
+            nextActions.getLast().redo();
+            prevActions.addLast(nextActions.pollLast());
         }
-        canUndo.set(!prevRedoActions.isEmpty() && !prevUndoActions.isEmpty());
-        canRedo.set(!nextRedoActions.isEmpty() && !nextUndoActions.isEmpty());
+        canMerge = false;
+        updateProperties();
     }
 
     /**
      * Specifies the most recent action and how to undo it.
      */
     public void setMostRecentAction(Runnable mostRecentAction, Runnable undoMostRecentAction) {
-        if (prevUndoActions.size() >= MAX_STACK_SIZE) {
-            // Removes old actions when stack size becomes too large.
-            prevRedoActions.removeFirst();
-            prevUndoActions.removeFirst();
+        setMostRecentAction(mostRecentAction, undoMostRecentAction, DEFAULT_ACTION_BYTES);
+    }
+
+    /**
+     * Specifies the most recent action and how to undo it.
+     *
+     * @param sizeBytes Roughly how much memory the action and its undo keep alive.
+     */
+    public void setMostRecentAction(
+            Runnable mostRecentAction,
+            Runnable undoMostRecentAction,
+            long sizeBytes) {
+        addAction(new Action(mostRecentAction, undoMostRecentAction, sizeBytes, null));
+    }
+
+    /**
+     * Specifies the most recent action and how to undo it, merging it into the action before if
+     * that one was recorded with the same key just before this one. Repeated drags of the same
+     * notes can then be undone in one go.
+     *
+     * @param mergeKey Identifies what the action applies to, such as the notes being dragged.
+     * @param sizeBytes Roughly how much memory the action and its undo keep alive.
+     */
+    public void mergeMostRecentAction(
+            Object mergeKey,
+            Runnable mostRecentAction,
+            Runnable undoMostRecentAction,
+            long sizeBytes) {
+        if (canMerge && prevActions.getLast().mergeKey.isPresent()
+                && Objects.equals(prevActions.getLast().mergeKey.get(), mergeKey)) {
+            Action prevAction = prevActions.getLast();
+            prevAction.redoActions.add(mostRecentAction);
+            prevAction.undoActions.add(undoMostRecentAction);
+            prevAction.sizeBytes += sizeBytes;
+            footprint.set(footprint.get() + sizeBytes);
+            evictOldActions();
+            return;
         }
-        prevRedoActions.addLast(mostRecentAction);
-        prevUndoActions.addLast(undoMostRecentAction);
-        canUndo.set(true);
+        addAction(new Action(mostRecentAction, undoMostRecentAction, sizeBytes, mergeKey));
+    }
+
+    private void addAction(Action action) {
         // Clear list of actions to be redone.
-        nextRedoActions.clear();
-        nextUndoActions.clear();
-        canRedo.set(false);
+        while (!nextActions.isEmpty()) {
+            footprint.set(footprint.get() - nextActions.removeFirst().sizeBytes);
+        }
+        prevActions.addLast(action);
+        footprint.set(footprint.get() + action.sizeBytes);
+        canMerge = true;
+        evictOldActions();
+    }
+
+    // Removes old actions until the rest fit in memory, always keeping the latest action.
+    private void evictOldActions() {
+        while (prevActions.size() > 1 && footprint.get() > maxBytes) {
+            footprint.set(footprint.get() - prevActions.removeFirst().sizeBytes);
+        }
+        updateProperties();
+    }
+
+    private void updateProperties() {
+        canUndo.set(!prevActions.isEmpty());
+        canRedo.set(!nextActions.isEmpty());
     }
 
     /**
      * Clears all memory of actions and how to undo/redo them.
      */
     public void clearActions() {
-        canUndo.set(false);
-        canRedo.set(false);
-        prevRedoActions.clear();
-        prevUndoActions.clear();
-        nextRedoActions.clear();
-        nextUndoActions.clear();
+        prevActions.clear();
+        nextActions.clear();
+        footprint.set(0);
+        canMerge = false;
+        updateProperties();
     }
 
     /** Returns property for whether there are any actions to undo. */
@@ -87,4 +182,9 @@ public class UndoService {
     public BooleanProperty canRedoProperty() {
         return canRedo;
     }
+
+    /** Returns property for roughly how much memory the actions being kept take up, in bytes. */
+    public ReadOnlyLongProperty footprintProperty() {
+        return footprint;
+    }
 }
@@ -0,0 +1,51 @@
+package com.utsusynth.utsu.engine;
+
+import com.google.common.base.Optional;
+
+/**
+ * Plays rendered audio. The vocal and instrumental tracks share one clock, so a single playback
+ * position describes both of them.
+ */
+public interface AudioOutput {
+    /** 16-bit audio that may still be rendering while it is read. */
+    interface Track {
+        int getSampleRate();
+
+        int getNumChannels();
+
+        /** Total length of the track, in frames. Can change while the track is rendering. */
+        int getNumFrames();
+
+        /**
+         * Copies interleaved samples into a buffer without waiting for audio that isn't ready.
+         *
+         * @return The number of frames copied, or -1 if the track has been replaced and nothing
+         *         more should be read from it.
+         */
+        int read(int fromFrame, short[] buffer);
+    }
+
+    /**
+     * Starts playing. Any ongoing playback is stopped first.
+     *
+     * @param vocal Playback ends when this track does.
+     * @param onStart Called from the audio thread once sound starts.
+     * @param onEnd Called from the audio thread once playback finishes or is stopped.
+     */
+    void start(Track vocal, Optional<Track> instrumental, Runnable onStart, Runnable onEnd);
+
+    void pause();
+
+    void resume();
+
+    /** Moves playback to a new position, in ms from the start of the vocal track. */
+    void seek(double positionMs);
+
+    /** Stops playback and releases its resources. Idempotent. */
+    void stop();
+
+    /** Current playback position, in ms from the start of the vocal track. */
+    double getPositionMs();
+
+    Engine.PlaybackStatus getStatus();
+}
@@ -3,29 +3,35 @@ package com.utsusynth.utsu.engine;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.DoubleConsumer;
 import org.apache.commons.io.FileUtils;
-import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
 import com.utsusynth.utsu.common.RegionBounds;
-import com.utsusynth.utsu.common.StatusBar;
 import com.utsusynth.utsu.common.exception.ErrorLogger;
 import com.utsusynth.utsu.common.quantize.Quantizer;
 import com.utsusynth.utsu.common.utils.PitchUtils;
 import com.utsusynth.utsu.model.song.Note;
 import com.utsusynth.utsu.model.song.NoteIterator;
 import com.utsusynth.utsu.model.song.Song;
+import com.utsusynth.utsu.model.song.SongSnapshot;
+import com.utsusynth.utsu.model.song.TempoMap;
+import com.utsusynth.utsu.model.song.pitch.PitchCurve;
 import com.utsusynth.utsu.model.voicebank.LyricConfig;
 import com.utsusynth.utsu.model.voicebank.Voicebank;
-import javafx.application.Platform;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
-import javafx.scene.media.MediaPlayer.Status;
-import javafx.util.Duration;
 
 public class Engine {
     private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
@@ -34,28 +40,69 @@ public class Engine {
         PLAYING, PAUSED, STOPPED,
     }
 
+    /** Receives the progress of a render, from 0 to 1, on whichever thread is rendering. */
+    public interface ProgressListener {
+        void onProgress(double progress);
+    }
+
+    private static final long POLL_MS = 50; // How often a waiting render checks for edits.
+    private static final long IDLE_RENDER_DELAY_MS = 750; // Wait for edits to settle down.
+
+    private enum WaitResult {
+        FINISHED, SONG_CHANGED, STOPPED,
+    }
+
+    // Where each note of a render goes in the mix, and the notes still rendering.
+    private static class Layout {
+        private final List<MixBuffer.Entry> entries = new ArrayList<>();
+        private final LinkedHashMap<String, Future<short[]>> futures = new LinkedHashMap<>();
+        private double regionStartMs; // Where the mix starts in the song, in real time.
+        private double totalMs;
+    }
+
     private final Resampler resampler;
     private final Wavtool wavtool;
+    private final RenderCache renderCache;
+    private final MixBuffer mixBuffer;
+    private final AudioOutput audioOutput;
     private final File tempDir;
-    private final StatusBar statusBar;
-    private final int threadPoolSize;
+    private final ProgressListener progressListener;
+    private final RenderScheduler renderScheduler;
+    private final ScheduledExecutorService idleTimer;
+    private final Object idleLock = new Object();
     private File resamplerPath;
     private File wavtoolPath;
 
-    private MediaPlayer instrumentalPlayer; // Used for background music.
-    private MediaPlayer mediaPlayer; // Used for audio playback.
+    private double mixStartMs; // Where the mix starts in the song, in real time.
+    private Optional<File> instrumentalFile = Optional.absent();
+    private Optional<InstrumentalTrack> instrumental = Optional.absent(); // Decoded once per file.
+    private volatile Optional<RenderScheduler.Job> playbackJob = Optional.absent();
+    private Optional<RenderScheduler.Job> idleJob = Optional.absent();
+    private Optional<ScheduledFuture<?>> pendingIdleRender = Optional.absent();
+    private int numIdleRequests = 0; // Lets a timer that already fired see it's out of date.
+    private LinkedHashMap<String, Future<short[]>> pendingNotes = new LinkedHashMap<>();
 
     public Engine(
             Resampler resampler,
             Wavtool wavtool,
-            StatusBar statusBar,
+            RenderCache renderCache,
+            AudioOutput audioOutput,
+            ProgressListener progressListener,
             int threadPoolSize,
             File resamplerPath,
             File wavtoolPath) {
         this.resampler = resampler;
         this.wavtool = wavtool;
-        this.statusBar = statusBar;
-        this.threadPoolSize = threadPoolSize;
+        this.renderCache = renderCache;
+        this.mixBuffer = new MixBuffer();
+        this.audioOutput = audioOutput;
+        this.progressListener = progressListener;
+        this.renderScheduler = new RenderScheduler(threadPoolSize);
+        this.idleTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idle-render-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
         this.resamplerPath = resamplerPath;
         this.wavtoolPath = wavtoolPath;
 
@@ -92,106 +139,313 @@ public class Engine {
      * @return Whether or not there is any sound to export.
      */
     public boolean renderWav(Song song, File finalDestination) {
-        Optional<File> finalSong = render(song, RegionBounds.WHOLE_SONG);
-        if (finalSong.isPresent()) {
-            finalSong.get().renameTo(finalDestination);
+        RenderScheduler.Job job =
+                renderScheduler.newJob(song.getRevision(), RenderScheduler.Priority.FOREGROUND);
+        stopIdleRender();
+        Optional<File> finalSong = render(
+                song,
+                RegionBounds.WHOLE_SONG,
+                job,
+                progressListener,
+                Optional.absent());
+        if (finalSong.isPresent() && !finalSong.get().renameTo(finalDestination)) {
+            try {
+                // Files can't be renamed onto another drive, so copy them instead.
+                FileUtils.copyFile(finalSong.get(), finalDestination);
+            } catch (IOException e) {
+                errorLogger.logError(e);
+                return false;
+            }
         }
         return finalSong.isPresent();
     }
 
     /**
-     * Starts playback for a region of a song.
+     * Starts playback for a region of a song. Sound starts as soon as the first notes have been
+     * rendered, while the rest of the region keeps rendering in the background.
      * 
+     * @param startCallback Called from the audio thread once sound starts playing, with the
+     *        duration of the region in ms.
+     * @param endCallback Called from the audio thread once playback ends or is stopped.
      * @return Whether or not there is any sound to play.
      */
     public boolean startPlayback(
             Song song,
             RegionBounds bounds,
-            Function<Duration, Void> startCallback,
+            DoubleConsumer startCallback,
             Runnable endCallback) {
         stopPlayback(); // Clear existing playback, if present.
-        Optional<File> finalSong = render(song, bounds);
-        if (finalSong.isPresent()) {
-            // Play instrumental, if present.
-            if (song.getInstrumental().isPresent()) {
-                Media instrumental = new Media(song.getInstrumental().get().toURI().toString());
-                System.out.println(instrumental.getSource());
-                instrumentalPlayer = new MediaPlayer(instrumental);
-                instrumentalPlayer.play();
+
+        // Playing again replaces any render for the previous playback, although notes it was
+        // still rendering are reused where possible.
+        RenderScheduler.Job job =
+                renderScheduler.newJob(song.getRevision(), RenderScheduler.Priority.FOREGROUND);
+        if (playbackJob.isPresent()) {
+            playbackJob.get().supersede();
+        }
+        playbackJob = Optional.of(job);
+        stopIdleRender();
+
+        Runnable startOutput = () -> {
+            double durationMs = mixBuffer.getTotalSamples() * 1000.0 / MixBuffer.SAMPLE_RATE;
+            Optional<AudioOutput.Track> instrumentalTrack = Optional.absent();
+            if (loadInstrumental(song.getInstrumental()).isPresent()) {
+                instrumentalTrack = Optional.of(instrumental.get().startingAt(mixStartMs));
             }
-            Media media = new Media(finalSong.get().toURI().toString());
-            mediaPlayer = new MediaPlayer(media);
-            mediaPlayer.setOnReady(() -> startCallback.apply(media.getDuration()));
-            mediaPlayer.setOnEndOfMedia(() -> mediaPlayer.stop());
-            mediaPlayer.setOnStopped(() -> {
-                endCallback.run();
-                if (instrumentalPlayer != null) {
-                    instrumentalPlayer.stop();
-                }
-            });
-            mediaPlayer.play();
+            audioOutput.start(
+                    mixBuffer.asTrack(),
+                    instrumentalTrack,
+                    () -> startCallback.accept(durationMs),
+                    endCallback);
+        };
+        Optional<File> finalSong =
+                render(song, bounds, job, progressListener, Optional.of(startOutput));
+        if (!finalSong.isPresent() && !job.isSuperseded()) {
+            audioOutput.stop();
         }
         return finalSong.isPresent();
     }
 
-    public void pausePlayback() {
-        if (mediaPlayer != null) {
-            mediaPlayer.pause();
-        }
-        if (instrumentalPlayer != null && instrumentalPlayer.getStatus().equals(Status.PLAYING)) {
-            instrumentalPlayer.pause();
+    /**
+     * Renders the whole song once it has gone a short while without edits, so that playback can
+     * start right away. Each call restarts the wait. Rendering ahead of time always gives way to
+     * playback and export.
+     */
+    public void scheduleIdleRender(Song song) {
+        synchronized (idleLock) {
+            if (pendingIdleRender.isPresent()) {
+                pendingIdleRender.get().cancel(false);
+            }
+            int request = ++numIdleRequests;
+            pendingIdleRender = Optional.of(idleTimer.schedule(
+                    () -> renderWhileIdle(song, request),
+                    IDLE_RENDER_DELAY_MS,
+                    TimeUnit.MILLISECONDS));
         }
     }
 
-    public void resumePlayback() {
-        if (mediaPlayer != null) {
-            mediaPlayer.play();
+    private void renderWhileIdle(Song song, int request) {
+        RenderScheduler.Job job =
+                renderScheduler.newJob(song.getRevision(), RenderScheduler.Priority.BACKGROUND);
+        synchronized (idleLock) {
+            if (request != numIdleRequests) {
+                return; // Replaced by a newer edit, or by playback or export.
+            }
+            idleJob = Optional.of(job);
         }
-        if (instrumentalPlayer != null && instrumentalPlayer.getStatus().equals(Status.PAUSED)) {
-            instrumentalPlayer.play();
+        synchronized (this) {
+            if (job.isSuperseded()) {
+                return;
+            }
+            if (getStatus() != PlaybackStatus.STOPPED) {
+                // Replacing the mix would cut off whatever is playing, so try again later.
+                scheduleIdleRender(song);
+                return;
+            }
+            // Nobody asked for this render, so it doesn't show its progress.
+            render(song, RegionBounds.WHOLE_SONG, job, progress -> {}, Optional.absent());
         }
     }
 
-    public void stopPlayback() {
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
+    // Stops waiting to render ahead of time, and lets a newer render take over its notes.
+    private void stopIdleRender() {
+        synchronized (idleLock) {
+            numIdleRequests++;
+            if (pendingIdleRender.isPresent()) {
+                pendingIdleRender.get().cancel(false);
+                pendingIdleRender = Optional.absent();
+            }
+            if (idleJob.isPresent()) {
+                idleJob.get().supersede();
+                idleJob = Optional.absent();
+            }
         }
     }
 
+    public void pausePlayback() {
+        audioOutput.pause();
+    }
+
+    public void resumePlayback() {
+        audioOutput.resume();
+    }
+
+    public void stopPlayback() {
+        audioOutput.stop();
+    }
+
+    /** Current position of ongoing playback, in ms from the start of the played region. */
+    public double getPlaybackPositionMs() {
+        return audioOutput.getPositionMs();
+    }
+
     public PlaybackStatus getStatus() {
-        if (mediaPlayer != null) {
-            switch (mediaPlayer.getStatus()) {
-                case PLAYING:
-                    return PlaybackStatus.PLAYING;
-                case PAUSED:
-                    return PlaybackStatus.PAUSED;
-                default:
-                    return PlaybackStatus.STOPPED;
-            }
+        return audioOutput.getStatus();
+    }
+
+    // Decodes the song's instrumental unless it was already decoded for an earlier playback.
+    private Optional<InstrumentalTrack> loadInstrumental(Optional<File> file) {
+        if (!file.equals(instrumentalFile)) {
+            instrumentalFile = file;
+            instrumental = file.isPresent() ? InstrumentalTrack.load(file.get())
+                    : Optional.absent();
         }
-        return PlaybackStatus.STOPPED;
+        return instrumental;
     }
 
-    private Optional<File> render(Song song, RegionBounds bounds) {
+    /**
+     * Renders a region of a song into the mix buffer and writes it to disk. Only one render runs
+     * at a time, since they all share the mix buffer. If the song is edited partway through, the
+     * mix is laid out again and only notes that changed are rendered again.
+     *
+     * @param job Where this render's notes are scheduled. Cancelling it ends the render early.
+     * @param listener Where to report how much of the render is done.
+     * @param onMixPrepared Called once the layout of the mix is known, before waiting for any
+     *        notes to finish rendering. Anything that reads the mix while it is being rendered
+     *        should start here.
+     */
+    private synchronized Optional<File> render(
+            Song song,
+            RegionBounds bounds,
+            RenderScheduler.Job job,
+            ProgressListener listener,
+            Optional<Runnable> onMixPrepared) {
+        if (job.isCancelled() || job.isSuperseded()) {
+            return Optional.absent();
+        }
         File finalSong = new File(tempDir, "final_song.wav");
         if (finalSong.exists() && bounds.equals(song.getLastRenderedRegion())) {
-            // Return old final song if it has not been invalidated.
+            // Return old final song if nothing in the region changed since it was rendered.
+            if (onMixPrepared.isPresent()) {
+                onMixPrepared.get().run();
+            }
             return Optional.of(finalSong);
         }
-        finalSong.delete(); // Delete any existing rendered song.
-        File renderedSilence = new File(tempDir, "rendered_silence.wav");
 
-        // Set up a thread pool for asynchronous rendering.
-        ExecutorService executor = Executors.newFixedThreadPool(threadPoolSize);
-        ArrayList<Future<Runnable>> futures = new ArrayList<>();
+        boolean isFirstLayout = true;
+        while (true) {
+            // Notes are laid out and rendered from a snapshot, so later edits can't reach them.
+            SongSnapshot snapshot = song.snapshot();
+            job.setRevision(snapshot.getRevision());
+            Optional<Layout> layout = layOutNotes(snapshot, song.getVoicebank(), bounds, job);
+            if (!layout.isPresent()) {
+                cancelPendingNotes(ImmutableSet.of());
+                return Optional.absent();
+            }
+            // Drop work for notes that are no longer part of the song.
+            cancelPendingNotes(layout.get().futures.keySet());
+            pendingNotes = layout.get().futures;
+
+            // Lay out the new mix, then fill it in as changed notes finish rendering. Anything
+            // already playing the mix keeps playing through a new layout of the same render.
+            // Mix is incomplete until render finishes.
+            song.setRendered(RegionBounds.INVALID, job.getRevision());
+            mixBuffer.prepare(
+                    layout.get().entries,
+                    layout.get().totalMs,
+                    /* keepReaders= */ !isFirstLayout);
+            mixStartMs = layout.get().regionStartMs;
+            mixBuffer.mixAvailable();
+            if (isFirstLayout && onMixPrepared.isPresent()) {
+                onMixPrepared.get().run();
+            }
+            isFirstLayout = false;
+
+            WaitResult result = waitForNotes(song, job, listener);
+            if (result == WaitResult.SONG_CHANGED) {
+                continue;
+            } else if (result == WaitResult.STOPPED) {
+                return Optional.absent();
+            }
+            break;
+        }
+        pendingNotes = new LinkedHashMap<>();
+
+        try {
+            mixBuffer.writeTo(finalSong);
+        } catch (IOException e) {
+            errorLogger.logError(e);
+            return Optional.absent();
+        }
+        listener.onProgress(1.0); // Mark task as complete.
+        renderCache.trim(); // Leaves alone any renders that other songs are still reading.
+
+        // Cache region that was played, which stays cached until something in it is edited.
+        song.setRendered(bounds, job.getRevision());
+        return Optional.of(finalSong);
+    }
 
+    // Waits for pending notes in order, adding each to the mix as soon as it is ready.
+    private WaitResult waitForNotes(
+            Song song,
+            RenderScheduler.Job job,
+            ProgressListener listener) {
+        int numFinished = 0;
+        for (Map.Entry<String, Future<short[]>> future : pendingNotes.entrySet()) {
+            listener.onProgress(numFinished++ * 1.0 / pendingNotes.size());
+            while (true) {
+                if (job.isCancelled() || job.isSuperseded()) {
+                    // Leave unfinished notes running in case a newer render can use them.
+                    return WaitResult.STOPPED;
+                }
+                if (song.getRevision() != job.getRevision()) {
+                    return WaitResult.SONG_CHANGED;
+                }
+                try {
+                    // Notes finish roughly in order, so the mix stays ahead of playback.
+                    short[] samples = future.getValue().get(POLL_MS, TimeUnit.MILLISECONDS);
+                    mixBuffer.addSamples(future.getKey(), samples);
+                    mixBuffer.mixAvailable();
+                    break;
+                } catch (TimeoutException e) {
+                    // Check whether the render is still wanted, then keep waiting.
+                } catch (CancellationException e) {
+                    return WaitResult.STOPPED;
+                } catch (InterruptedException | ExecutionException e) {
+                    errorLogger.logError(e);
+                    job.cancel();
+                    cancelPendingNotes(ImmutableSet.of());
+                    return WaitResult.STOPPED;
+                }
+            }
+        }
+        return WaitResult.FINISHED;
+    }
+
+    // Cancels pending notes that are not in the given set, killing their processes.
+    private void cancelPendingNotes(Set<String> toKeep) {
+        for (Map.Entry<String, Future<short[]>> pending : pendingNotes.entrySet()) {
+            if (!toKeep.contains(pending.getKey())) {
+                pending.getValue().cancel(true);
+            }
+        }
+    }
+
+    // Works out where every note in a region goes in the mix, and starts rendering any note
+    // that the mix doesn't already have. Returns absent if there are no notes to render.
+    private Optional<Layout> layOutNotes(
+            SongSnapshot song,
+            Voicebank voicebank,
+            RegionBounds bounds,
+            RenderScheduler.Job job) {
         NoteIterator notes = song.getNoteIterator(bounds);
         if (!notes.hasNext()) {
             return Optional.absent();
         }
+
+        Layout layout = new Layout();
+        Optional<PitchCurve.Snapshot> pitchbends = Optional.absent();
+
+        TempoMap tempoMap = song.getTempoMap();
+        double totalMs = 0; // End of the rendered audio so far, in real time.
         int totalDelta = notes.getCurDelta(); // Absolute position of current note.
-        Voicebank voicebank = song.getVoicebank();
         boolean isFirstNote = true;
+        // Lyric configs are found here rather than saved to notes, since notes in a snapshot
+        // are shared with later snapshots and undo history.
+        Optional<LyricConfig> prevConfig = Optional.absent();
+        if (notes.peekPrev().isPresent()) {
+            prevConfig = voicebank.getLyricConfig(notes.peekPrev().get().getTrueLyric());
+        }
         while (notes.hasNext()) {
             Note note = notes.next();
             totalDelta += note.getDelta(); // Unique for every note in a single sequence.
@@ -206,9 +460,6 @@ public class Engine {
                 String prevLyric = getNearbyPrevLyric(notes.peekPrev());
                 String pitch = PitchUtils.noteNumToPitch(note.getNoteNum());
                 config = voicebank.getLyricConfig(prevLyric, note.getLyric(), pitch);
-                if (config.isPresent()) {
-                    note.setTrueLyric(config.get().getTrueLyric());
-                }
             }
 
             // Find preutterance of current and next notes.
@@ -222,8 +473,10 @@ public class Engine {
             if (isFirstNote) {
                 if (notes.getCurDelta() - preutter > bounds.getMinMs()) {
                     double startDelta = notes.getCurDelta() - preutter - bounds.getMinMs();
-                    addSilence(startDelta, song, renderedSilence, finalSong, executor, futures);
+                    totalMs += getSilenceMs(bounds.getMinMs(), startDelta, tempoMap);
                 }
+                double startPosition = Math.min(bounds.getMinMs(), notes.getCurDelta() - preutter);
+                layout.regionStartMs = tempoMap.toRealMs(startPosition);
                 isFirstNote = false;
             }
 
@@ -231,23 +484,15 @@ public class Engine {
             if (!config.isPresent()) {
                 System.out.println("Could not find config for lyric: " + note.getLyric());
                 if (notes.peekNext().isPresent()) {
-                    addSilence(
+                    totalMs += getSilenceMs(
+                            totalDelta,
                             note.getLength() - notes.peekNext().get().getRealPreutter(),
-                            song,
-                            renderedSilence,
-                            finalSong,
-                            executor,
-                            futures);
+                            tempoMap);
                 } else {
                     // Case where the last note in the song is silent.
-                    addFinalSilence(
-                            note.getLength(),
-                            song,
-                            renderedSilence,
-                            finalSong,
-                            executor,
-                            futures);
+                    totalMs += getSilenceMs(totalDelta, note.getLength(), tempoMap);
                 }
+                prevConfig = config;
                 continue;
             }
             System.out.println(config.get());
@@ -258,46 +503,72 @@ public class Engine {
             System.out.println("Length is " + adjustedLength);
 
             // Calculate pitchbends.
-            int firstStep = getFirstPitchStep(totalDelta, preutter);
-            int lastStep = getLastPitchStep(totalDelta, preutter, adjustedLength);
-            String pitchString = song.getPitchString(firstStep, lastStep, note.getNoteNum());
-
-            // Apply resampler in separate thread and schedule wavtool.
+            if (!pitchbends.isPresent()) {
+                pitchbends = Optional.of(getPitchSnapshot(song, config.get()));
+            }
+            final int pitchStep = pitchbends.get().getStepMs();
+            int firstStep = getFirstPitchStep(totalDelta, preutter, pitchStep);
+            int lastStep = getLastPitchStep(totalDelta, preutter, adjustedLength, pitchStep);
+            String pitchString =
+                    pitchbends.get().renderPitchbends(firstStep, lastStep, note.getNoteNum());
+
+            // Place note in the mix, overlapping the previous note if they touch. Resamplers only
+            // take one tempo, so a note that spans a tempo change is stretched to fit.
+            final double tempo = tempoMap.getAverageTempo(totalDelta - preutter, adjustedLength);
+            boolean includeOverlap =
+                    areNotesTouching(notes.peekPrev(), prevConfig, Optional.of(preutter));
+            double overlapMs = Wavtool.getOverlapMs(
+                    tempo,
+                    note,
+                    adjustedLength,
+                    config.get(),
+                    includeOverlap);
+            double startMs = totalMs - overlapMs;
+            double lengthMs = adjustedLength * (125.0 / tempo);
+            totalMs = startMs + lengthMs;
+
+            // Apply resampler and wavtool in separate thread unless note is unchanged. Notes still
+            // rendering for an earlier revision of the song are reused if they didn't change.
             final int curTotalDelta = totalDelta;
             final LyricConfig curConfig = config.get();
-            final boolean includeOverlap =
-                    areNotesTouching(notes.peekPrev(), voicebank, Optional.of(preutter));
-            final boolean isLastNote = !notes.peekNext().isPresent();
-            futures.add(executor.submit(() -> {
-                // Re-samples lyric and puts result into renderedNote file.
-                File renderedNote = new File(tempDir, "rendered_note" + curTotalDelta + ".wav");
-                resampler.resample(
-                        resamplerPath,
-                        note,
-                        adjustedLength,
-                        curConfig,
-                        renderedNote,
-                        pitchString,
-                        song);
-                Runnable useWavtool = () -> {
-                    // Append rendered note to output file using wavtool.
-                    wavtool.addNewNote(
-                            wavtoolPath,
-                            song,
-                            note,
-                            adjustedLength,
-                            curConfig,
-                            renderedNote,
-                            finalSong,
-                            includeOverlap,
-                            isLastNote);
-                };
-                return useWavtool;
-            }));
+            final String resampleKey = resampler.getCacheKey(
+                    resamplerPath,
+                    note,
+                    adjustedLength,
+                    curConfig,
+                    pitchString,
+                    pitchStep,
+                    tempo,
+                    song.getFlags());
+            final String noteKey =
+                    wavtool.getCacheKey(wavtoolPath, tempo, note, adjustedLength, resampleKey);
+            layout.entries.add(new MixBuffer.Entry(noteKey, startMs, lengthMs));
+            if (!mixBuffer.hasSamples(noteKey) && !layout.futures.containsKey(noteKey)) {
+                Future<short[]> pending = pendingNotes.get(noteKey);
+                // Notes are queued by where they start in the mix, so the audio that playback
+                // needs first is always rendered first.
+                if (pending != null && !pending.isCancelled()) {
+                    job.adopt(pending, startMs);
+                    layout.futures.put(noteKey, pending);
+                } else {
+                    layout.futures.put(noteKey, job.submit(() -> {
+                        return renderNote(
+                                resampleKey,
+                                curTotalDelta,
+                                song.getFlags(),
+                                note,
+                                adjustedLength,
+                                curConfig,
+                                pitchString,
+                                pitchStep,
+                                tempo);
+                    }, startMs));
+                }
+            }
 
             // Possible silence after each note.
             if (notes.peekNext().isPresent()
-                    && !areNotesTouching(Optional.of(note), voicebank, nextPreutter)) {
+                    && !areNotesTouching(Optional.of(note), config, nextPreutter)) {
                 // Add silence
                 double silenceLength;
                 if (nextPreutter.isPresent()) {
@@ -305,64 +576,62 @@ public class Engine {
                 } else {
                     silenceLength = note.getLength() - note.getDuration();
                 }
-                addSilence(silenceLength, song, renderedSilence, finalSong, executor, futures);
+                double silencePosition = totalDelta - preutter + adjustedLength;
+                totalMs += getSilenceMs(silencePosition, silenceLength, tempoMap);
             }
+            prevConfig = config;
         }
+        layout.totalMs = totalMs;
+        return Optional.of(layout);
+    }
 
-        // When resampler finishes, run wavtool on notes in sequential order.
-        for (int i = 0; i < futures.size(); i++) {
-            try {
-                double curProgress = i * 1.0 / futures.size();
-                Platform.runLater(() -> statusBar.setProgress(curProgress));
-                futures.get(i).get().run();
-            } catch (InterruptedException | ExecutionException e) {
-                errorLogger.logError(e);
-                return Optional.absent();
+    // Resamples a note and applies its envelope, reusing earlier resamples where possible.
+    private short[] renderNote(
+            String resampleKey,
+            int totalDelta,
+            String songFlags,
+            Note note,
+            double adjustedLength,
+            LyricConfig config,
+            String pitchString,
+            int pitchStep,
+            double tempo) throws InterruptedException {
+        // Re-samples lyric unless an identical note has already been resampled.
+        Optional<File> cachedResample = renderCache.get(resampleKey);
+        File resampledNote;
+        if (cachedResample.isPresent()) {
+            resampledNote = cachedResample.get();
+        } else {
+            // Stale renders of the same note may still be running, so use a unique file.
+            File newResample = new File(
+                    tempDir,
+                    "rendered_note" + totalDelta + "_" + resampleKey.substring(0, 8) + ".wav");
+            resampler.resample(
+                    resamplerPath,
+                    note,
+                    adjustedLength,
+                    config,
+                    newResample,
+                    pitchString,
+                    pitchStep,
+                    tempo,
+                    songFlags);
+            if (Thread.interrupted()) {
+                // Resampler was killed partway through, so its output can't be cached.
+                throw new InterruptedException("Note render cancelled.");
             }
+            resampledNote = renderCache.put(resampleKey, newResample);
         }
-        Platform.runLater(() -> statusBar.setProgress(1.0)); // Mark task as complete.
-        executor.shutdown(); // Shut down thread pool
-
-        song.setRendered(bounds); // Cache region that was played.
-        return Optional.of(finalSong);
-    }
-
-    private void addSilence(
-            double duration,
-            Song song,
-            File renderedNote,
-            File finalSong,
-            ExecutorService executor,
-            ArrayList<Future<Runnable>> futures) {
-        if (duration <= 0.0) {
-            return;
+        try {
+            return wavtool.renderNote(wavtoolPath, tempo, note, adjustedLength, resampledNote);
+        } finally {
+            renderCache.release(resampleKey);
         }
-        double trueDuration = duration * (125.0 / song.getTempo());
-        futures.add(executor.submit(() -> {
-            resampler.resampleSilence(resamplerPath, renderedNote, trueDuration);
-            Runnable useWavtool = () -> {
-                wavtool.addSilence(wavtoolPath, trueDuration, renderedNote, finalSong, false);
-            };
-            return useWavtool;
-        }));
     }
 
-    private void addFinalSilence(
-            double duration,
-            Song song,
-            File renderedNote,
-            File finalSong,
-            ExecutorService executor,
-            ArrayList<Future<Runnable>> futures) {
-        // The final note must be passed to the wavtool.
-        double trueDuration = Math.max(duration, 0) * (125.0 / song.getTempo());
-        futures.add(executor.submit(() -> {
-            resampler.resampleSilence(resamplerPath, renderedNote, trueDuration);
-            Runnable useWavtool = () -> {
-                wavtool.addSilence(wavtoolPath, trueDuration, renderedNote, finalSong, true);
-            };
-            return useWavtool;
-        }));
+    // Converts a silence between notes into real time. Negative silences are ignored.
+    private static double getSilenceMs(double positionMs, double duration, TempoMap tempoMap) {
+        return tempoMap.toRealMs(positionMs, Math.max(duration, 0));
     }
 
     // Returns empty string if there is no nearby (within DEFAULT_NOTE_DURATION) previous note.
@@ -374,25 +643,40 @@ public class Engine {
         return "";
     }
 
-    private static int getFirstPitchStep(int totalDelta, double preutter) {
-        return (int) Math.ceil((totalDelta - preutter) / 5.0);
+    // Uses the song's pitch step if the resampler can take it, or the default step if not.
+    private PitchCurve.Snapshot getPitchSnapshot(SongSnapshot song, LyricConfig config) {
+        int pitchStep = song.getPitchStep();
+        if (!resampler.supportsPitchStep(resamplerPath, pitchStep, config, tempDir)) {
+            System.out.println(
+                    "Warning: Resampler does not support pitch steps of " + pitchStep + " ticks.");
+            pitchStep = PitchCurve.DEFAULT_STEP_MS;
+        }
+        return song.getPitchSnapshot(pitchStep);
+    }
+
+    private static int getFirstPitchStep(int totalDelta, double preutter, int pitchStep) {
+        return (int) Math.ceil((totalDelta - preutter) / pitchStep);
     }
 
-    private static int getLastPitchStep(int totalDelta, double preutter, double adjustedLength) {
-        return (int) Math.floor((totalDelta - preutter + adjustedLength) / 5.0);
+    private static int getLastPitchStep(
+            int totalDelta,
+            double preutter,
+            double adjustedLength,
+            int pitchStep) {
+        return (int) Math.floor((totalDelta - preutter + adjustedLength) / pitchStep);
     }
 
     // Determines whether two notes are "touching" given the second note's preutterance.
     private static boolean areNotesTouching(
             Optional<Note> note,
-            Voicebank voicebank,
+            Optional<LyricConfig> config,
             Optional<Double> nextPreutter) {
         if (!note.isPresent() || !nextPreutter.isPresent()) {
             return false;
         }
 
         // Return false if current note cannot be rendered.
-        if (!voicebank.getLyricConfig(note.get().getTrueLyric()).isPresent()) {
+        if (!config.isPresent()) {
             return false;
         }
 
@@ -0,0 +1,84 @@
+package com.utsusynth.utsu.engine;
+
+import java.io.File;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+
+/**
+ * Everything needed to render songs. Doesn't depend on JavaFX, so it can be used without a UI as
+ * long as an {@link Engine.ProgressListener} is bound somewhere else.
+ */
+public class EngineModule extends AbstractModule {
+    private final int numRenderThreads;
+
+    public EngineModule(int numRenderThreads) {
+        this.numRenderThreads = numRenderThreads;
+    }
+
+    @Override
+    protected void configure() {
+        // Everything is provided below.
+    }
+
+    @Provides
+    private Engine provideEngine(
+            Resampler resampler,
+            JavaWavtool javaWavtool,
+            ExternalWavtool externalWavtool,
+            RenderCache renderCache,
+            OpenAlAudioOutput audioOutput,
+            Engine.ProgressListener progressListener) {
+        String os = System.getProperty("os.name").toLowerCase();
+        String resamplerPath;
+        String wavtoolPath;
+        if (os.contains("win")) {
+            resamplerPath = "assets/win64/macres.exe";
+            wavtoolPath = "assets/win64/wavtool-yawu.exe";
+        } else if (os.contains("mac")) {
+            resamplerPath = "assets/Mac/macres";
+            wavtoolPath = "assets/Mac/wavtool-yawu";
+        } else {
+            resamplerPath = "assets/linux64/macres";
+            wavtoolPath = "assets/linux64/wavtool-yawu";
+        }
+        File resamplerFile = new File(resamplerPath);
+        File wavtoolFile = new File(wavtoolPath);
+        // Notes are enveloped in-process unless an external wavtool is explicitly requested.
+        Wavtool wavtool = System.getProperty("utsu.wavtool", "java").equals("external")
+                ? externalWavtool
+                : javaWavtool;
+        return new Engine(
+                resampler,
+                wavtool,
+                renderCache,
+                audioOutput,
+                progressListener,
+                numRenderThreads,
+                resamplerFile,
+                wavtoolFile);
+    }
+
+    @Provides
+    @Singleton
+    private RenderCache provideRenderCache() {
+        // Kept outside the engine's temp directory so renders survive between sessions.
+        File cacheDir = new File(System.getProperty("java.io.tmpdir"), "utsu_render_cache");
+        return new RenderCache(cacheDir, /* maxBytes= */ 1024L * 1024 * 1024);
+    }
+
+    @Provides
+    @Singleton
+    private FrqGenerator provideFrqGenerator(ExternalProcessRunner runner) {
+        String os = System.getProperty("os.name").toLowerCase();
+        String frqGeneratorPath;
+        if (os.contains("win")) {
+            frqGeneratorPath = "assets/win64/frq0003gen.exe";
+        } else if (os.contains("mac")) {
+            frqGeneratorPath = "assets/Mac/frq0003gen";
+        } else {
+            frqGeneratorPath = "assets/linux64/frq0003gen";
+        }
+        return new FrqGenerator(runner, new File(frqGeneratorPath), 256);
+    }
+}
@@ -5,21 +5,27 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.Set;
 import com.utsusynth.utsu.common.exception.ErrorLogger;
 
 /**
- * Class that runs an external command-line process with the provided arguments.
+ * Class that runs an external command-line process with the provided arguments. Several processes
+ * may run at once, each from its own thread.
  */
 public class ExternalProcessRunner {
     private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
 
-    private Process curProcess;
+    private final Set<Process> curProcesses;
 
     public ExternalProcessRunner() {
+        curProcesses = new HashSet<>();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             // Destroy any ongoing processes when Utsu closes.
-            if (curProcess != null && curProcess.isAlive()) {
-                curProcess.destroy();
+            synchronized (curProcesses) {
+                for (Process process : curProcesses) {
+                    process.destroy();
+                }
             }
         }));
     }
@@ -28,18 +34,35 @@ public class ExternalProcessRunner {
         runProcess(null, args);
     }
 
+    /**
+     * Runs a process and waits for it to finish. If the calling thread is interrupted, the process
+     * is killed and the thread's interrupted status is kept so callers can tell it was cancelled.
+     */
     public void runProcess(File workingDir, String... args) {
         ProcessBuilder builder = new ProcessBuilder(args);
         builder.redirectErrorStream(true);
         if (workingDir != null) {
             builder.directory(workingDir);
         }
+        Process process = null;
         try {
-            curProcess = builder.start();
-            watch(curProcess.getInputStream());
-            curProcess.waitFor();
-        } catch (IOException | InterruptedException e) {
+            process = builder.start();
+            synchronized (curProcesses) {
+                curProcesses.add(process);
+            }
+            watch(process.getInputStream());
+            process.waitFor();
+        } catch (IOException e) {
             errorLogger.logError(e);
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (process != null) {
+                synchronized (curProcesses) {
+                    curProcesses.remove(process);
+                }
+            }
         }
     }
 
@@ -0,0 +1,119 @@
+package com.utsusynth.utsu.engine;
+
+import java.io.File;
+import java.io.IOException;
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.utsusynth.utsu.common.data.WavData;
+import com.utsusynth.utsu.common.exception.ErrorLogger;
+import com.utsusynth.utsu.files.SoundFileReader;
+import com.utsusynth.utsu.model.song.Note;
+
+/** Renders notes by calling an external wavtool executable such as wavtool-yawu. */
+public class ExternalWavtool implements Wavtool {
+    private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
+
+    private final ExternalProcessRunner runner;
+    private final RenderCache renderCache;
+    private final SoundFileReader soundFileReader;
+
+    @Inject
+    ExternalWavtool(
+            ExternalProcessRunner runner,
+            RenderCache renderCache,
+            SoundFileReader soundFileReader) {
+        this.runner = runner;
+        this.renderCache = renderCache;
+        this.soundFileReader = soundFileReader;
+    }
+
+    @Override
+    public short[] renderNote(
+            File wavtoolPath,
+            double tempo,
+            Note note,
+            double noteLength,
+            File inputFile) {
+        // Wavtool output is cached on disk since each call launches a process.
+        String[] keyArgs =
+                getWavtoolArgs(wavtoolPath, tempo, note, noteLength, inputFile.getPath(), "");
+        String cacheKey = RenderCache.makeKey(new File[] {wavtoolPath, inputFile}, keyArgs);
+        Optional<File> renderedNote = renderCache.get(cacheKey);
+        if (!renderedNote.isPresent()) {
+            try {
+                File newNote = File.createTempFile("wavtool_note", ".wav");
+                newNote.delete(); // Wavtool appends to existing output.
+                // Call wavtool to write a single note into an empty output file.
+                runner.runProcess(
+                        getWavtoolArgs(
+                                wavtoolPath,
+                                tempo,
+                                note,
+                                noteLength,
+                                inputFile.getAbsolutePath(),
+                                newNote.getAbsolutePath()));
+                if (Thread.currentThread().isInterrupted()) {
+                    return new short[0]; // Render was cancelled, so don't cache partial output.
+                }
+                renderedNote = Optional.of(renderCache.put(cacheKey, newNote));
+            } catch (IOException e) {
+                errorLogger.logError(e);
+                return new short[0];
+            }
+        }
+
+        Optional<WavData> wavData = soundFileReader.loadWavData(renderedNote.get());
+        renderCache.release(cacheKey);
+        if (!wavData.isPresent()) {
+            return new short[0];
+        }
+        int[] samples = wavData.get().getSamples();
+        short[] shortSamples = new short[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            shortSamples[i] = (short) samples[i];
+        }
+        return shortSamples;
+    }
+
+    @Override
+    public String getCacheKey(
+            File wavtoolPath,
+            double tempo,
+            Note note,
+            double noteLength,
+            String inputCacheKey) {
+        String[] args = getWavtoolArgs(wavtoolPath, tempo, note, noteLength, inputCacheKey, "");
+        return RenderCache.makeKey(new File[] {wavtoolPath}, args);
+    }
+
+    private static String[] getWavtoolArgs(
+            File wavtoolPath,
+            double tempo,
+            Note note,
+            double noteLength,
+            String inputFilePath,
+            String outputFilePath) {
+        double startPoint = note.getStartPoint(); // TODO: Add auto start point.
+        String[] envelope = note.getFullEnvelope();
+        double scaleFactor = 125 / tempo;
+
+        return new String[] {
+                wavtoolPath.getAbsolutePath(),
+                outputFilePath,
+                inputFilePath,
+                Double.toString(startPoint),
+                Double.toString(noteLength * scaleFactor),
+                envelope[0], // p1
+                envelope[1], // p2
+                envelope[2], // p3
+                envelope[3], // v1
+                envelope[4], // v2
+                envelope[5], // v3
+                envelope[6], // v4
+                "0", // overlap
+                envelope[8], // p4
+                envelope[9], // p5
+                envelope[10], // v5
+                "LAST_NOTE"}; // Each note is written out as a complete file.
+    }
+}
@@ -0,0 +1,98 @@
+package com.utsusynth.utsu.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import org.apache.commons.io.IOUtils;
+import com.google.common.base.Optional;
+import com.utsusynth.utsu.common.exception.ErrorLogger;
+
+/** A fully decoded instrumental, played alongside the vocals from any position in the song. */
+class InstrumentalTrack implements AudioOutput.Track {
+    private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
+
+    private final short[] samples; // Interleaved 16-bit samples.
+    private final int sampleRate;
+    private final int numChannels;
+    private final int offsetFrames; // Frame of the instrumental that lines up with frame 0.
+
+    private InstrumentalTrack(short[] samples, int sampleRate, int numChannels, int offsetFrames) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.numChannels = numChannels;
+        this.offsetFrames = offsetFrames;
+    }
+
+    /** Decodes any mono or stereo file that Java Sound can read, such as WAV or MP3. */
+    static Optional<InstrumentalTrack> load(File file) {
+        try (AudioInputStream input = AudioSystem.getAudioInputStream(file)) {
+            AudioFormat format = input.getFormat();
+            if (format.getChannels() > 2) {
+                System.out.println("Error: Instrumental must be mono or stereo.");
+                return Optional.absent();
+            }
+            AudioFormat pcmFormat = new AudioFormat(
+                    Encoding.PCM_SIGNED,
+                    format.getSampleRate(),
+                    16,
+                    format.getChannels(),
+                    format.getChannels() * 2,
+                    format.getSampleRate(),
+                    false);
+            try (AudioInputStream pcmInput = AudioSystem.getAudioInputStream(pcmFormat, input)) {
+                ByteBuffer bytes = ByteBuffer.wrap(IOUtils.toByteArray(pcmInput));
+                bytes.order(ByteOrder.LITTLE_ENDIAN);
+                short[] samples = new short[bytes.remaining() / 2];
+                bytes.asShortBuffer().get(samples);
+                return Optional.of(new InstrumentalTrack(
+                        samples,
+                        Math.round(format.getSampleRate()),
+                        format.getChannels(),
+                        0));
+            }
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            errorLogger.logError(e);
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Returns a view of this instrumental that starts at a position in the song. Negative
+     * positions are padded with silence.
+     */
+    InstrumentalTrack startingAt(double positionMs) {
+        int newOffset = (int) Math.round(positionMs * sampleRate / 1000);
+        return new InstrumentalTrack(samples, sampleRate, numChannels, newOffset);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getNumChannels() {
+        return numChannels;
+    }
+
+    @Override
+    public int getNumFrames() {
+        return Math.max(0, samples.length / numChannels - offsetFrames);
+    }
+
+    @Override
+    public int read(int fromFrame, short[] buffer) {
+        int numFrames = Math.min(buffer.length / numChannels, getNumFrames() - fromFrame);
+        for (int i = 0; i < numFrames * numChannels; i++) {
+            int sample = (fromFrame + offsetFrames) * numChannels + i;
+            buffer[i] = sample >= 0 ? samples[sample] : 0;
+        }
+        return Math.max(0, numFrames);
+    }
+}
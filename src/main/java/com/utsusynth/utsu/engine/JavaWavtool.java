@@ -0,0 +1,108 @@
+package com.utsusynth.utsu.engine;
+
+import java.io.File;
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.utsusynth.utsu.common.data.WavData;
+import com.utsusynth.utsu.files.SoundFileReader;
+import com.utsusynth.utsu.model.song.Note;
+
+/**
+ * Renders notes in-process, trimming the resampled audio to the note's start point and applying
+ * the note's envelope. Produces the same output on every OS without launching any processes.
+ */
+public class JavaWavtool implements Wavtool {
+    private static final String VERSION = "java-wavtool-1"; // Change when output changes.
+
+    private final SoundFileReader soundFileReader;
+
+    @Inject
+    JavaWavtool(SoundFileReader soundFileReader) {
+        this.soundFileReader = soundFileReader;
+    }
+
+    @Override
+    public short[] renderNote(
+            File wavtoolPath,
+            double tempo,
+            Note note,
+            double noteLength,
+            File inputFile) {
+        double lengthMs = noteLength * (125 / tempo);
+        short[] output = new short[msToSamples(lengthMs)];
+        Optional<WavData> wavData = soundFileReader.loadWavData(inputFile);
+        if (!wavData.isPresent()) {
+            return output;
+        }
+        int[] input = wavData.get().getSamples();
+        int startSample = msToSamples(note.getStartPoint()); // TODO: Add auto start point.
+        double[][] envelope = getEnvelopePoints(note.getRawFullEnvelope(), lengthMs);
+
+        // Walk through the envelope one line segment at a time.
+        int numSamples = Math.min(output.length, Math.max(0, input.length - startSample));
+        int segment = 0;
+        for (int i = 0; i < numSamples; i++) {
+            double positionMs = i * 1000.0 / MixBuffer.SAMPLE_RATE;
+            while (segment < envelope.length - 2 && positionMs >= envelope[segment + 1][0]) {
+                segment++;
+            }
+            double[] start = envelope[segment];
+            double[] end = envelope[segment + 1];
+            double width = end[0] - start[0];
+            double ratio = width <= 0 ? 1 : Math.min(1, (positionMs - start[0]) / width);
+            double volume = (start[1] + (end[1] - start[1]) * ratio) / 100.0;
+            double sample = input[startSample + i] * volume;
+            output[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+        return output;
+    }
+
+    @Override
+    public String getCacheKey(
+            File wavtoolPath,
+            double tempo,
+            Note note,
+            double noteLength,
+            String inputCacheKey) {
+        double[] envelope = note.getRawFullEnvelope();
+        String[] args = new String[envelope.length + 4];
+        args[0] = VERSION;
+        args[1] = inputCacheKey;
+        args[2] = Double.toString(note.getStartPoint());
+        args[3] = Double.toString(noteLength * (125 / tempo));
+        for (int i = 0; i < envelope.length; i++) {
+            args[i + 4] = Double.toString(envelope[i]);
+        }
+        return RenderCache.makeKey(new File[0], args);
+    }
+
+    /**
+     * Converts a UTAU envelope into (ms, volume percent) points. Widths p1, p2, and p5 count
+     * forward from the start of the note, while p3 and p4 count backward from the end.
+     */
+    private static double[][] getEnvelopePoints(double[] envelope, double lengthMs) {
+        double p1 = envelope[0];
+        double p2 = envelope[1];
+        double p3 = envelope[2];
+        double p4 = envelope[8];
+        double p5 = envelope[9];
+        double[][] points = new double[][] {
+                {0, 0},
+                {p1, envelope[3]}, // v1
+                {p1 + p2, envelope[4]}, // v2
+                {p1 + p2 + p5, envelope[10]}, // v5
+                {lengthMs - p4 - p3, envelope[5]}, // v3
+                {lengthMs - p4, envelope[6]}, // v4
+                {lengthMs, 0}};
+        // Keep points in order and inside the note if the widths don't fit.
+        for (int i = 0; i < points.length; i++) {
+            double prevMs = i > 0 ? points[i - 1][0] : 0;
+            points[i][0] = Math.min(lengthMs, Math.max(prevMs, points[i][0]));
+        }
+        return points;
+    }
+
+    private static int msToSamples(double ms) {
+        return (int) Math.round(Math.max(0, ms) * MixBuffer.SAMPLE_RATE / 1000);
+    }
+}
@@ -0,0 +1,401 @@
+package com.utsusynth.utsu.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import com.google.common.base.Optional;
+
+/**
+ * The mixed output of a render, kept in memory as one segment per note boundary. When a song is
+ * rendered again, only the segments touched by changed notes are re-mixed and rewritten to disk.
+ */
+class MixBuffer {
+    static final int SAMPLE_RATE = 44100;
+    private static final int HEADER_BYTES = 44;
+
+    /** A single rendered note and where it sits in the mix. */
+    static class Entry {
+        private final String key;
+        private final int startSample;
+        private final int numSamples;
+
+        Entry(String key, double startMs, double lengthMs) {
+            this.key = key;
+            this.startSample = msToSamples(startMs);
+            this.numSamples = msToSamples(lengthMs);
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        private int getEndSample() {
+            return startSample + numSamples;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == null || !(other instanceof Entry)) {
+                return false;
+            }
+            Entry otherEntry = (Entry) other;
+            return key.equals(otherEntry.key) && startSample == otherEntry.startSample
+                    && numSamples == otherEntry.numSamples;
+        }
+
+        @Override
+        public int hashCode() {
+            return (key.hashCode() * 31 + startSample) * 31 + numSamples;
+        }
+    }
+
+    private List<Entry> entries; // Sorted by start sample.
+    private int[] maxEndSamples; // Furthest end sample of any entry up to each index.
+    private Map<String, short[]> noteSamples;
+    private int[] segmentStarts; // One extra value at the end marks the end of the mix.
+    private short[][] segments;
+    private boolean[] dirtySegments;
+    private int numMixedSegments; // Every segment before this one has been mixed.
+    private int nextMissingEntry; // First entry whose audio has not been added yet.
+    private int generation;
+    private Optional<File> lastWritten;
+
+    MixBuffer() {
+        entries = new ArrayList<>();
+        maxEndSamples = new int[0];
+        noteSamples = new HashMap<>();
+        segmentStarts = new int[] {0};
+        segments = new short[0][];
+        dirtySegments = new boolean[0];
+        lastWritten = Optional.absent();
+    }
+
+    /** Whether a note's audio is already held by the mix and does not need to be loaded. */
+    synchronized boolean hasSamples(String key) {
+        return noteSamples.containsKey(key);
+    }
+
+    /**
+     * Lays out a new version of the mix without mixing anything yet. Segments touched by changed
+     * notes are mixed later by {@link #mixAvailable()}, once audio for every note that reaches
+     * them has been added.
+     *
+     * @param newEntries Every note in the new mix, in order.
+     * @param totalMs Length of the new mix.
+     * @param keepReaders Whether readers of the old layout should carry on reading the new one,
+     *        which is the case when the new layout is an updated version of the same audio.
+     * @return The number of segments that will have to be re-mixed.
+     */
+    synchronized int prepare(List<Entry> newEntries, double totalMs, boolean keepReaders) {
+        int totalSamples = msToSamples(totalMs);
+        if (!keepReaders) {
+            generation++;
+        }
+
+        // Notes that were added, removed, or moved leave dirty regions behind.
+        Set<Entry> oldEntrySet = new HashSet<>(entries);
+        Set<Entry> newEntrySet = new HashSet<>(newEntries);
+        List<int[]> dirtyRanges = new ArrayList<>();
+        addChangedRanges(entries, newEntrySet, dirtyRanges);
+        addChangedRanges(newEntries, oldEntrySet, dirtyRanges);
+        dirtyRanges = mergeRanges(dirtyRanges);
+
+        // Keep only the audio that is still used.
+        Map<String, short[]> keptSamples = new HashMap<>();
+        for (Entry entry : newEntries) {
+            if (noteSamples.containsKey(entry.key)) {
+                keptSamples.put(entry.key, noteSamples.get(entry.key));
+            }
+        }
+        noteSamples = keptSamples;
+        entries = new ArrayList<>(newEntries);
+        maxEndSamples = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            int prevMax = i > 0 ? maxEndSamples[i - 1] : 0;
+            maxEndSamples[i] = Math.max(prevMax, entries.get(i).getEndSample());
+        }
+        nextMissingEntry = 0;
+
+        // Segment boundaries fall on the start of every note.
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(0);
+        for (Entry entry : entries) {
+            if (entry.startSample > 0 && entry.startSample < totalSamples) {
+                boundaries.add(entry.startSample);
+            }
+        }
+        int[] newSegmentStarts = new int[boundaries.size() + 1];
+        int index = 0;
+        for (int boundary : boundaries) {
+            newSegmentStarts[index++] = boundary;
+        }
+        newSegmentStarts[index] = Math.max(totalSamples, newSegmentStarts[index - 1]);
+
+        // Reuse old segments that cover the same span and were not touched.
+        Map<Integer, Integer> oldSegmentsByStart = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            oldSegmentsByStart.put(segmentStarts[i], i);
+        }
+        int numSegments = newSegmentStarts.length - 1;
+        short[][] newSegments = new short[numSegments][];
+        boolean[] newDirtySegments = new boolean[numSegments];
+        int numRemixed = 0;
+        int dirtyIndex = 0;
+        for (int i = 0; i < numSegments; i++) {
+            int start = newSegmentStarts[i];
+            int end = newSegmentStarts[i + 1];
+            while (dirtyIndex < dirtyRanges.size() && dirtyRanges.get(dirtyIndex)[1] <= start) {
+                dirtyIndex++;
+            }
+            boolean touched = dirtyIndex < dirtyRanges.size()
+                    && dirtyRanges.get(dirtyIndex)[0] < end;
+            Integer oldIndex = oldSegmentsByStart.get(start);
+            if (!touched && oldIndex != null && segmentStarts[oldIndex + 1] == end
+                    && segments[oldIndex] != null) {
+                newSegments[i] = segments[oldIndex];
+                newDirtySegments[i] = dirtySegments[oldIndex];
+            } else {
+                newSegments[i] = null; // Mixed once its notes are available.
+                newDirtySegments[i] = true;
+                numRemixed++;
+            }
+        }
+        segmentStarts = newSegmentStarts;
+        segments = newSegments;
+        dirtySegments = newDirtySegments;
+        numMixedSegments = 0;
+        return numRemixed;
+    }
+
+    /** Adds the audio for one note of the mix laid out by {@link #prepare}. */
+    synchronized void addSamples(String key, short[] samples) {
+        noteSamples.put(key, samples);
+    }
+
+    /**
+     * Mixes every pending segment whose notes have all been added, in order from the start.
+     *
+     * @return How many samples from the start of the mix are ready to be read.
+     */
+    synchronized int mixAvailable() {
+        // Entries are sorted by start, so nothing before the first missing note can change.
+        while (nextMissingEntry < entries.size()
+                && noteSamples.containsKey(entries.get(nextMissingEntry).key)) {
+            nextMissingEntry++;
+        }
+        int readyUntil = nextMissingEntry < entries.size()
+                ? entries.get(nextMissingEntry).startSample
+                : getTotalSamples();
+        while (numMixedSegments < segments.length) {
+            int start = segmentStarts[numMixedSegments];
+            int end = segmentStarts[numMixedSegments + 1];
+            if (segments[numMixedSegments] == null) {
+                if (end > readyUntil) {
+                    break;
+                }
+                segments[numMixedSegments] = mixSegment(start, end);
+            }
+            numMixedSegments++;
+        }
+        return segmentStarts[numMixedSegments];
+    }
+
+    /** Total length of the current mix, in samples. */
+    synchronized int getTotalSamples() {
+        return segmentStarts[segmentStarts.length - 1];
+    }
+
+    /** Identifies the current layout of the mix. Changes every time the mix is prepared again. */
+    synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Copies mixed samples into a buffer, without waiting for anything that is not mixed yet.
+     *
+     * @param expectedGeneration The generation the reader started with.
+     * @param fromSample First sample to read.
+     * @param buffer Where to copy samples to.
+     * @return The number of samples copied, or -1 if the mix has been replaced since the reader
+     *         started.
+     */
+    synchronized int read(int expectedGeneration, int fromSample, short[] buffer) {
+        if (expectedGeneration != generation) {
+            return -1;
+        }
+        int readyUntil = segmentStarts[numMixedSegments];
+        int numCopied = 0;
+        int segment = Arrays.binarySearch(segmentStarts, 0, segments.length, fromSample);
+        if (segment < 0) {
+            segment = -segment - 2; // The segment that contains the first sample.
+        }
+        while (numCopied < buffer.length && fromSample + numCopied < readyUntil) {
+            int position = fromSample + numCopied;
+            while (segmentStarts[segment + 1] <= position) {
+                segment++;
+            }
+            int length = Math.min(
+                    buffer.length - numCopied,
+                    Math.min(readyUntil, segmentStarts[segment + 1]) - position);
+            System.arraycopy(
+                    segments[segment],
+                    position - segmentStarts[segment],
+                    buffer,
+                    numCopied,
+                    length);
+            numCopied += length;
+        }
+        return numCopied;
+    }
+
+    /** Returns the mix as currently laid out, so it can be played while it is rendering. */
+    synchronized AudioOutput.Track asTrack() {
+        int trackGeneration = generation;
+        return new AudioOutput.Track() {
+            @Override
+            public int getSampleRate() {
+                return SAMPLE_RATE;
+            }
+
+            @Override
+            public int getNumChannels() {
+                return 1;
+            }
+
+            @Override
+            public int getNumFrames() {
+                return getTotalSamples();
+            }
+
+            @Override
+            public int read(int fromFrame, short[] buffer) {
+                return MixBuffer.this.read(trackGeneration, fromFrame, buffer);
+            }
+        };
+    }
+
+    /**
+     * Writes the mix to a WAV file. If the file still holds the previous version of this mix,
+     * only the segments that changed since then are overwritten.
+     */
+    synchronized void writeTo(File file) throws IOException {
+        int totalSamples = getTotalSamples();
+        long expectedLength = HEADER_BYTES + 2L * totalSamples;
+        boolean canPatch = lastWritten.isPresent() && lastWritten.get().equals(file)
+                && file.exists() && file.length() == expectedLength;
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            if (!canPatch) {
+                output.setLength(0);
+                output.write(makeHeader(totalSamples));
+            }
+            for (int i = 0; i < segments.length; i++) {
+                if (canPatch && !dirtySegments[i]) {
+                    continue;
+                }
+                output.seek(HEADER_BYTES + 2L * segmentStarts[i]);
+                output.write(toBytes(segments[i]));
+            }
+        }
+        Arrays.fill(dirtySegments, false);
+        lastWritten = Optional.of(file);
+    }
+
+    private short[] mixSegment(int start, int end) {
+        int[] mixed = new int[end - start];
+        // Search backwards from the last note that starts inside this segment.
+        int last = findLastEntryBefore(end);
+        for (int i = last; i >= 0 && maxEndSamples[i] > start; i--) {
+            Entry entry = entries.get(i);
+            short[] samples = noteSamples.get(entry.key);
+            if (samples == null) {
+                continue;
+            }
+            int from = Math.max(start, entry.startSample);
+            int to = Math.min(Math.min(end, entry.getEndSample()),
+                    entry.startSample + samples.length);
+            for (int pos = from; pos < to; pos++) {
+                mixed[pos - start] += samples[pos - entry.startSample];
+            }
+        }
+        short[] segment = new short[mixed.length];
+        for (int i = 0; i < mixed.length; i++) {
+            segment[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixed[i]));
+        }
+        return segment;
+    }
+
+    // Returns the index of the last entry starting before the given sample, or -1 if none do.
+    private int findLastEntryBefore(int sample) {
+        int low = 0;
+        int high = entries.size() - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) / 2;
+            if (entries.get(mid).startSample < sample) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    private static void addChangedRanges(
+            Collection<Entry> from,
+            Set<Entry> unchanged,
+            List<int[]> ranges) {
+        for (Entry entry : from) {
+            if (!unchanged.contains(entry)) {
+                ranges.add(new int[] {entry.startSample, entry.getEndSample()});
+            }
+        }
+    }
+
+    private static List<int[]> mergeRanges(List<int[]> ranges) {
+        ranges.sort((first, second) -> Integer.compare(first[0], second[0]));
+        List<int[]> merged = new ArrayList<>();
+        for (int[] range : ranges) {
+            if (!merged.isEmpty() && merged.get(merged.size() - 1)[1] >= range[0]) {
+                int[] last = merged.get(merged.size() - 1);
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new int[] {range[0], range[1]});
+            }
+        }
+        return merged;
+    }
+
+    private static int msToSamples(double ms) {
+        return (int) Math.round(Math.max(0, ms) * SAMPLE_RATE / 1000);
+    }
+
+    private static byte[] toBytes(short[] samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(samples);
+        return buffer.array();
+    }
+
+    // Header for a 16-bit mono PCM WAV file.
+    private static byte[] makeHeader(int numSamples) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(36 + numSamples * 2).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+        header.putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2).putShort((short) 2).putShort((short) 16);
+        header.put("data".getBytes()).putInt(numSamples * 2);
+        return header.array();
+    }
+}
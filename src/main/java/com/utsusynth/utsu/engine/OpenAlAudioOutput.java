@@ -0,0 +1,382 @@
+package com.utsusynth.utsu.engine;
+
+import static org.lwjgl.openal.AL10.AL_BUFFERS_PROCESSED;
+import static org.lwjgl.openal.AL10.AL_FORMAT_MONO16;
+import static org.lwjgl.openal.AL10.AL_FORMAT_STEREO16;
+import static org.lwjgl.openal.AL10.AL_PAUSED;
+import static org.lwjgl.openal.AL10.AL_PLAYING;
+import static org.lwjgl.openal.AL10.AL_SOURCE_STATE;
+import static org.lwjgl.openal.AL10.alBufferData;
+import static org.lwjgl.openal.AL10.alDeleteBuffers;
+import static org.lwjgl.openal.AL10.alDeleteSources;
+import static org.lwjgl.openal.AL10.alGenBuffers;
+import static org.lwjgl.openal.AL10.alGenSources;
+import static org.lwjgl.openal.AL10.alGetSourcei;
+import static org.lwjgl.openal.AL10.alSourcePause;
+import static org.lwjgl.openal.AL10.alSourcePlayv;
+import static org.lwjgl.openal.AL10.alSourceQueueBuffers;
+import static org.lwjgl.openal.AL10.alSourceStop;
+import static org.lwjgl.openal.AL10.alSourceUnqueueBuffers;
+import static org.lwjgl.openal.AL11.AL_SAMPLE_OFFSET;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.openal.ALC10;
+import org.lwjgl.openal.ALCCapabilities;
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.utsusynth.utsu.common.exception.ErrorLogger;
+
+/**
+ * Plays audio through OpenAL while it is still being rendered. Audio is queued in small buffers
+ * as soon as it is ready, so playback can begin once the first few notes have been mixed. The
+ * vocal and instrumental play from two sources that are always started and stopped together.
+ */
+public class OpenAlAudioOutput implements AudioOutput {
+    private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
+
+    private static final int NUM_BUFFERS = 8;
+    private static final double BUFFER_MS = 100;
+    private static final double PREBUFFER_MS = 250;
+    private static final long POLL_MS = 10;
+
+    private static long device; // Opened on first use and kept until the app closes.
+
+    private Optional<Stream> curStream = Optional.absent();
+
+    @Inject
+    OpenAlAudioOutput() {
+        // Nothing to initialize until playback starts.
+    }
+
+    @Override
+    public synchronized void start(
+            Track vocal,
+            Optional<Track> instrumental,
+            Runnable onStart,
+            Runnable onEnd) {
+        stop();
+        Stream stream = new Stream(vocal, instrumental, onStart, onEnd);
+        Thread thread = new Thread(stream, "audio-output");
+        thread.setDaemon(true);
+        stream.thread = thread;
+        curStream = Optional.of(stream);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void pause() {
+        if (curStream.isPresent()) {
+            curStream.get().paused = true;
+        }
+    }
+
+    @Override
+    public synchronized void resume() {
+        if (curStream.isPresent()) {
+            curStream.get().paused = false;
+        }
+    }
+
+    @Override
+    public synchronized void seek(double positionMs) {
+        if (curStream.isPresent()) {
+            curStream.get().seekMs = Math.max(0, positionMs);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!curStream.isPresent()) {
+            return;
+        }
+        Stream stream = curStream.get();
+        curStream = Optional.absent();
+        stream.stopped = true;
+        try {
+            stream.thread.join();
+        } catch (InterruptedException e) {
+            errorLogger.logError(e);
+        }
+    }
+
+    @Override
+    public synchronized double getPositionMs() {
+        if (!curStream.isPresent()) {
+            return 0;
+        }
+        return curStream.get().getPositionMs();
+    }
+
+    @Override
+    public synchronized Engine.PlaybackStatus getStatus() {
+        if (!curStream.isPresent() || curStream.get().finished) {
+            return Engine.PlaybackStatus.STOPPED;
+        }
+        return curStream.get().paused ? Engine.PlaybackStatus.PAUSED
+                : Engine.PlaybackStatus.PLAYING;
+    }
+
+    // Feeds one track into one OpenAL source.
+    private static class Channel {
+        private final Track track;
+        private final int format;
+        private final int source;
+        private final int[] buffers;
+        private final ArrayDeque<Integer> freeBuffers;
+        private final ArrayDeque<Integer> queuedFrames; // Length of each queued buffer.
+        private final short[] chunk;
+        private int endFrame = -1; // Set if the track is replaced while playing.
+        private int nextFrame; // Next frame to queue.
+        private int playedFrames; // Frames before the first queued buffer.
+
+        private Channel(Track track) {
+            this.track = track;
+            this.format = track.getNumChannels() == 2 ? AL_FORMAT_STEREO16 : AL_FORMAT_MONO16;
+            this.source = alGenSources();
+            this.buffers = new int[NUM_BUFFERS];
+            alGenBuffers(buffers);
+            this.freeBuffers = new ArrayDeque<>();
+            for (int buffer : buffers) {
+                freeBuffers.push(buffer);
+            }
+            this.queuedFrames = new ArrayDeque<>();
+            int bufferFrames = msToFrames(BUFFER_MS);
+            this.chunk = new short[bufferFrames * track.getNumChannels()];
+        }
+
+        // Takes back buffers that have finished playing.
+        private void reclaim() {
+            int numProcessed = alGetSourcei(source, AL_BUFFERS_PROCESSED);
+            for (int i = 0; i < numProcessed; i++) {
+                freeBuffers.push(alSourceUnqueueBuffers(source));
+                playedFrames += queuedFrames.poll();
+            }
+        }
+
+        // Queues as much audio as is ready and fits into free buffers.
+        private void fill() {
+            while (!freeBuffers.isEmpty() && nextFrame < getNumFrames()) {
+                int numRead = track.read(nextFrame, chunk);
+                if (numRead < 0) {
+                    endFrame = nextFrame; // End after whatever is already queued.
+                }
+                if (numRead <= 0) {
+                    return;
+                }
+                int numSamples = numRead * track.getNumChannels();
+                short[] data = numSamples == chunk.length ? chunk
+                        : Arrays.copyOf(chunk, numSamples);
+                int buffer = freeBuffers.pop();
+                alBufferData(buffer, format, data, track.getSampleRate());
+                alSourceQueueBuffers(source, buffer);
+                queuedFrames.add(numRead);
+                nextFrame += numRead;
+            }
+        }
+
+        // Drops everything queued and continues from a new position.
+        private void rewind(int frame) {
+            alSourceStop(source);
+            reclaim();
+            nextFrame = Math.max(0, Math.min(frame, getNumFrames()));
+            playedFrames = nextFrame;
+        }
+
+        private int getState() {
+            return alGetSourcei(source, AL_SOURCE_STATE);
+        }
+
+        private boolean hasQueuedAudio() {
+            return !queuedFrames.isEmpty();
+        }
+
+        private boolean isPrebuffered() {
+            int queued = nextFrame - playedFrames;
+            return queued >= Math.min(msToFrames(PREBUFFER_MS), getNumFrames() - playedFrames);
+        }
+
+        private boolean isDone() {
+            return nextFrame >= getNumFrames() && queuedFrames.isEmpty();
+        }
+
+        // A track's length can change while it is still rendering.
+        private int getNumFrames() {
+            return endFrame >= 0 ? endFrame : track.getNumFrames();
+        }
+
+        private double getPositionMs() {
+            int frame = playedFrames + alGetSourcei(source, AL_SAMPLE_OFFSET);
+            return frame * 1000.0 / track.getSampleRate();
+        }
+
+        private int msToFrames(double ms) {
+            return (int) Math.round(ms * track.getSampleRate() / 1000);
+        }
+
+        private void delete() {
+            alSourceStop(source);
+            reclaim();
+            alDeleteSources(source);
+            alDeleteBuffers(buffers);
+        }
+    }
+
+    // Every OpenAL call for a stream happens on its own thread or while holding its lock.
+    private static class Stream implements Runnable {
+        private final Track vocalTrack;
+        private final Optional<Track> instrumentalTrack;
+        private final Runnable onStart;
+        private final Runnable onEnd;
+        private Thread thread;
+        private Channel vocal;
+        private Optional<Channel> instrumental = Optional.absent();
+        private volatile boolean paused = false;
+        private volatile boolean stopped = false;
+        private volatile boolean finished = false;
+        private volatile double seekMs = -1; // Negative when there's nothing to seek to.
+
+        private Stream(
+                Track vocalTrack,
+                Optional<Track> instrumentalTrack,
+                Runnable onStart,
+                Runnable onEnd) {
+            this.vocalTrack = vocalTrack;
+            this.instrumentalTrack = instrumentalTrack;
+            this.onStart = onStart;
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public void run() {
+            if (!openDevice()) {
+                finished = true;
+                onEnd.run();
+                return;
+            }
+            synchronized (this) {
+                vocal = new Channel(vocalTrack);
+                if (instrumentalTrack.isPresent()) {
+                    instrumental = Optional.of(new Channel(instrumentalTrack.get()));
+                }
+            }
+            boolean started = false;
+            boolean buffering = true; // Waiting for enough audio to play smoothly.
+            try {
+                while (!stopped) {
+                    synchronized (this) {
+                        if (seekMs >= 0) {
+                            rewindAll(seekMs);
+                            seekMs = -1;
+                            buffering = true;
+                        }
+                        vocal.reclaim();
+                        vocal.fill();
+                        if (instrumental.isPresent()) {
+                            instrumental.get().reclaim();
+                            instrumental.get().fill();
+                        }
+
+                        int state = vocal.getState();
+                        if (buffering) {
+                            if (!paused && vocal.isPrebuffered()) {
+                                playAll();
+                                buffering = false;
+                                if (!started) {
+                                    started = true;
+                                    onStart.run();
+                                }
+                            }
+                        } else if (paused) {
+                            if (state == AL_PLAYING) {
+                                pauseAll();
+                            }
+                        } else if (state == AL_PAUSED) {
+                            playAll();
+                        } else if (state != AL_PLAYING) {
+                            if (vocal.isDone()) {
+                                break; // Everything has been played.
+                            }
+                            // The renderer fell behind, so line the instrumental back up with
+                            // the vocal and wait for more audio.
+                            rewindAll(vocal.getPositionMs());
+                            buffering = true;
+                        }
+                    }
+                    Thread.sleep(POLL_MS);
+                }
+            } catch (InterruptedException e) {
+                errorLogger.logError(e);
+            } finally {
+                synchronized (this) {
+                    vocal.delete();
+                    if (instrumental.isPresent()) {
+                        instrumental.get().delete();
+                    }
+                    finished = true;
+                }
+                onEnd.run();
+            }
+        }
+
+        private synchronized double getPositionMs() {
+            if (seekMs >= 0) {
+                return seekMs;
+            }
+            if (vocal == null || finished) {
+                return 0;
+            }
+            return vocal.getPositionMs();
+        }
+
+        private void rewindAll(double positionMs) {
+            vocal.rewind(vocal.msToFrames(positionMs));
+            if (instrumental.isPresent()) {
+                instrumental.get().rewind(instrumental.get().msToFrames(positionMs));
+            }
+        }
+
+        // Starting both sources in one call keeps them on the same sample clock.
+        private void playAll() {
+            if (instrumental.isPresent() && instrumental.get().hasQueuedAudio()) {
+                alSourcePlayv(new int[] {vocal.source, instrumental.get().source});
+            } else {
+                alSourcePlayv(new int[] {vocal.source});
+            }
+        }
+
+        private void pauseAll() {
+            alSourcePause(vocal.source);
+            if (instrumental.isPresent()) {
+                alSourcePause(instrumental.get().source);
+            }
+        }
+    }
+
+    private static synchronized boolean openDevice() {
+        if (device != 0) {
+            return true;
+        }
+        try {
+            long newDevice = ALC10.alcOpenDevice((ByteBuffer) null);
+            if (newDevice == 0) {
+                errorLogger.logError(new IllegalStateException("Could not open audio device."));
+                return false;
+            }
+            ALCCapabilities deviceCapabilities = ALC.createCapabilities(newDevice);
+            long context = ALC10.alcCreateContext(newDevice, (IntBuffer) null);
+            ALC10.alcMakeContextCurrent(context);
+            AL.setCurrentProcess(AL.createCapabilities(deviceCapabilities));
+            device = newDevice;
+            return true;
+        } catch (RuntimeException | LinkageError e) {
+            // Most likely the OpenAL natives could not be loaded on this platform.
+            errorLogger.logError(e);
+            return false;
+        }
+    }
+}
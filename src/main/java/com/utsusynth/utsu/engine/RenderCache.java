@@ -0,0 +1,155 @@
+package com.utsusynth.utsu.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.google.common.base.Optional;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.utsusynth.utsu.common.exception.ErrorLogger;
+
+/**
+ * Disk cache of resampled notes, keyed by a hash of everything that was passed to the resampler.
+ * Entries are evicted in least-recently-used order once the cache grows past its size limit.
+ *
+ * <p>
+ * Several engines can share one cache, so each file handed out is kept until whoever asked for
+ * it calls {@link #release}, however long that takes.
+ */
+public class RenderCache {
+    private static final ErrorLogger errorLogger = ErrorLogger.getLogger();
+    private static final String SUFFIX = ".wav";
+
+    private final File cacheDir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries; // Cache key to file size, in LRU order.
+    private final Map<String, Integer> numReaders; // Entries that can't be evicted yet.
+    private long totalBytes;
+
+    public RenderCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+        this.numReaders = new HashMap<>();
+        this.totalBytes = 0;
+
+        // Pick up files left over from previous sessions, oldest first.
+        cacheDir.mkdirs();
+        File[] existing = cacheDir.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (existing != null) {
+            Arrays.sort(existing, Comparator.comparingLong(File::lastModified));
+            for (File file : existing) {
+                String name = file.getName();
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+                totalBytes += file.length();
+            }
+        }
+    }
+
+    /**
+     * Hashes the arguments of an external process along with the identity of the files it reads,
+     * so that replacing a resampler or voicebank sample changes the key.
+     */
+    static String makeKey(File[] inputFiles, String... args) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (File file : inputFiles) {
+            hasher.putLong(file.length()).putLong(file.lastModified());
+        }
+        for (String arg : args) {
+            hasher.putString(arg, StandardCharsets.UTF_8).putChar('\0');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the cached render for this key, if there is one. If so, the render won't be evicted
+     * until it is released.
+     */
+    public synchronized Optional<File> get(String key) {
+        if (entries.get(key) == null) { // Also marks entry as most recently used.
+            return Optional.absent();
+        }
+        File cached = getFile(key);
+        if (!cached.exists()) {
+            // File was removed from outside utsu.
+            totalBytes -= entries.remove(key);
+            return Optional.absent();
+        }
+        cached.setLastModified(System.currentTimeMillis());
+        acquire(key);
+        return Optional.of(cached);
+    }
+
+    /**
+     * Moves a freshly rendered file into the cache. The render won't be evicted until it is
+     * released.
+     *
+     * @return The location of the file inside the cache.
+     */
+    public synchronized File put(String key, File rendered) {
+        acquire(key); // Even if the move fails, so that release always matches.
+        File cached = getFile(key);
+        if (entries.containsKey(key)) {
+            // Another thread rendered the same note first.
+            totalBytes -= entries.remove(key);
+        }
+        try {
+            Files.move(rendered, cached);
+        } catch (IOException e) {
+            errorLogger.logError(e);
+            return rendered; // Fall back to the uncached file.
+        }
+        entries.put(key, cached.length());
+        totalBytes += cached.length();
+        return cached;
+    }
+
+    /** Allows a render returned by {@link #get} or {@link #put} to be evicted again. */
+    public synchronized void release(String key) {
+        Integer readers = numReaders.get(key);
+        if (readers == null) {
+            return;
+        } else if (readers > 1) {
+            numReaders.put(key, readers - 1);
+        } else {
+            numReaders.remove(key);
+        }
+    }
+
+    private void acquire(String key) {
+        Integer readers = numReaders.get(key);
+        numReaders.put(key, readers == null ? 1 : readers + 1);
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits in its size limit. Entries that
+     * haven't been released are skipped, so the cache may stay over its limit until they are.
+     */
+    public synchronized void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (numReaders.containsKey(eldest.getKey())) {
+                continue;
+            }
+            getFile(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    private File getFile(String key) {
+        return new File(cacheDir, key + SUFFIX);
+    }
+}
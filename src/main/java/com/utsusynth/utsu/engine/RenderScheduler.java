@@ -0,0 +1,185 @@
+package com.utsusynth.utsu.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived pool of threads that resample and render notes. Threads are reused across renders,
+ * and the work for each render is grouped into a job that can be cancelled as a whole. Queued
+ * tasks run in order of priority, then in the order they were submitted.
+ */
+public class RenderScheduler {
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    /** Listed from most to least urgent. */
+    public enum Priority {
+        FOREGROUND, // Playback or export that the user is waiting on.
+        BACKGROUND, // Rendering ahead of time while the editor is idle.
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong numSubmitted = new AtomicLong();
+
+    // A queued task, ordered by its priority, then by how soon its audio is needed.
+    private static class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        private final long order;
+        private volatile Priority priority;
+        private volatile double deadlineMs;
+
+        private Task(Callable<T> callable, Priority priority, double deadlineMs, long order) {
+            super(callable);
+            this.priority = priority;
+            this.deadlineMs = deadlineMs;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            int byDeadline = Double.compare(deadlineMs, other.deadlineMs);
+            return byDeadline != 0 ? byDeadline : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * A group of tasks belonging to a single render, along with the revision of the song being
+     * rendered.
+     */
+    public class Job {
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final Priority priority;
+        private boolean cancelled = false;
+        private boolean superseded = false;
+        private int revision;
+
+        private Job(int revision, Priority priority) {
+            this.revision = revision;
+            this.priority = priority;
+        }
+
+        /**
+         * @param deadlineMs When the task's audio is needed, in ms from the start of the render.
+         *        Tasks needed soonest run first.
+         */
+        public synchronized <T> Future<T> submit(Callable<T> task, double deadlineMs) {
+            Task<T> future =
+                    new Task<>(task, priority, deadlineMs, numSubmitted.getAndIncrement());
+            executor.execute(future);
+            if (cancelled) {
+                future.cancel(true);
+            } else {
+                futures.add(future);
+            }
+            return future;
+        }
+
+        /**
+         * Takes over a task from an earlier job, so that it is cancelled along with this job and
+         * is queued by this job's priority, if more urgent, and by a new deadline.
+         */
+        public synchronized void adopt(Future<?> future, double deadlineMs) {
+            if (cancelled) {
+                future.cancel(true);
+                return;
+            }
+            futures.add(future);
+            if (future instanceof Task) {
+                Task<?> task = (Task<?>) future;
+                Priority newPriority = task.priority.compareTo(priority) > 0 ? priority
+                        : task.priority;
+                requeue(task, newPriority, deadlineMs);
+            }
+        }
+
+        /** Cancels every task in this job, interrupting the ones that already started. */
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                futures.clear();
+            }
+            executor.purge(); // Remove cancelled tasks from the queue right away.
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Marks this job as replaced by a newer render. Its tasks keep running so that the newer
+         * render can reuse any results that are still valid.
+         */
+        public synchronized void supersede() {
+            superseded = true;
+        }
+
+        public synchronized boolean isSuperseded() {
+            return superseded;
+        }
+
+        public synchronized int getRevision() {
+            return revision;
+        }
+
+        /** Records that the job's render has moved on to a newer revision of the song. */
+        public synchronized void setRevision(int revision) {
+            this.revision = revision;
+        }
+    }
+
+    public RenderScheduler(int numThreads) {
+        executor = new ThreadPoolExecutor(
+                numThreads,
+                numThreads,
+                IDLE_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "render-worker");
+                    thread.setDaemon(true); // Don't keep Utsu open after the window closes.
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true); // Idle schedulers hold on to no threads.
+    }
+
+    // Moves a task to its new place in the queue. Tasks that already started are left alone.
+    private void requeue(Task<?> task, Priority priority, double deadlineMs) {
+        if (task.priority == priority && task.deadlineMs == deadlineMs) {
+            return;
+        }
+        // The queue can't reorder a task in place, so take it out before changing it.
+        boolean wasQueued = executor.remove(task);
+        task.priority = priority;
+        task.deadlineMs = deadlineMs;
+        if (wasQueued) {
+            executor.execute(task);
+        }
+    }
+
+    /** One thread per available processor, used when no thread count is configured. */
+    public static int getDefaultNumThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Starts a new job for rendering the given revision of a song. */
+    public Job newJob(int revision, Priority priority) {
+        return new Job(revision, priority);
+    }
+
+    /** The number of tasks, from all jobs, that are waiting for a free thread. */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+}
@@ -1,20 +1,32 @@
 package com.utsusynth.utsu.engine;
 
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import com.utsusynth.utsu.common.data.WavData;
 import com.utsusynth.utsu.common.utils.PitchUtils;
+import com.utsusynth.utsu.files.SoundFileReader;
 import com.utsusynth.utsu.model.song.Note;
-import com.utsusynth.utsu.model.song.Song;
+import com.utsusynth.utsu.model.song.pitch.PitchCurve;
 import com.utsusynth.utsu.model.voicebank.LyricConfig;
 
 public class Resampler {
-    private static final File SILENCE_PATH = new File("assets/silence.wav");
+    // Stands in for the output file when hashing, since output location doesn't affect output.
+    private static final File CACHE_PLACEHOLDER = new File("rendered.wav");
+
+    private static final int PROBE_LENGTH_MS = 480; // One beat at a tempo of 125.
 
     private final ExternalProcessRunner runner;
+    private final SoundFileReader soundFileReader;
+    private final Map<String, Boolean> pitchStepSupport; // Keyed by resampler and pitch step.
 
     @Inject
-    Resampler(ExternalProcessRunner runner) {
+    Resampler(ExternalProcessRunner runner, SoundFileReader soundFileReader) {
         this.runner = runner;
+        this.soundFileReader = soundFileReader;
+        this.pitchStepSupport = new ConcurrentHashMap<>();
     }
 
     void resample(
@@ -24,23 +36,172 @@ public class Resampler {
             LyricConfig config,
             File outputFile,
             String pitchString,
-            Song song) {
+            int pitchStep,
+            double tempo,
+            String songFlags) {
+        runner.runProcess(
+                getResampleArgs(
+                        resamplerPath,
+                        note,
+                        noteLength,
+                        config,
+                        outputFile,
+                        pitchString,
+                        pitchStep,
+                        tempo,
+                        songFlags));
+    }
+
+    /**
+     * Returns a key that changes whenever the resampler would produce a different output for this
+     * note, including when the resampler or the voicebank sample is swapped out.
+     */
+    String getCacheKey(
+            File resamplerPath,
+            Note note,
+            double noteLength,
+            LyricConfig config,
+            String pitchString,
+            int pitchStep,
+            double tempo,
+            String songFlags) {
+        String[] args = getResampleArgs(
+                resamplerPath,
+                note,
+                noteLength,
+                config,
+                CACHE_PLACEHOLDER,
+                pitchString,
+                pitchStep,
+                tempo,
+                songFlags);
+        return RenderCache.makeKey(new File[] {resamplerPath, config.getPathToFile()}, args);
+    }
+
+    /**
+     * Checks whether a resampler can take pitch steps of a different length than the default. The
+     * check renders a sample three times with a pitch that drops by a semitone halfway through:
+     * once with default steps, then with the new steps at a scaled tempo and at the real tempo. A
+     * resampler that times its pitch string by the tempo it's given matches the first render
+     * more closely when the tempo is scaled. Each resampler is only checked once per step length.
+     *
+     * @param config Any sample from the song's voicebank.
+     * @param workDir Where to put the test renders.
+     */
+    boolean supportsPitchStep(
+            File resamplerPath,
+            int pitchStep,
+            LyricConfig config,
+            File workDir) {
+        if (pitchStep == PitchCurve.DEFAULT_STEP_MS) {
+            return true;
+        }
+        String key = resamplerPath.getAbsolutePath() + "#" + pitchStep;
+        Boolean supported = pitchStepSupport.get(key);
+        if (supported == null) {
+            File probeFile = new File(workDir, "pitch_step_probe.wav");
+            Optional<int[]> expected = renderProbe(
+                    resamplerPath,
+                    config,
+                    probeFile,
+                    PitchCurve.DEFAULT_STEP_MS,
+                    getPitchTempo(125, PitchCurve.DEFAULT_STEP_MS));
+            Optional<int[]> scaled = renderProbe(
+                    resamplerPath,
+                    config,
+                    probeFile,
+                    pitchStep,
+                    getPitchTempo(125, pitchStep));
+            Optional<int[]> unscaled =
+                    renderProbe(resamplerPath, config, probeFile, pitchStep, 125);
+            probeFile.delete();
+            supported = expected.isPresent() && scaled.isPresent() && unscaled.isPresent()
+                    && getDistance(expected.get(), scaled.get()) < getDistance(
+                            expected.get(),
+                            unscaled.get());
+            pitchStepSupport.put(key, supported);
+        }
+        return supported;
+    }
+
+    // Renders a sample at the default tempo with a pitch that drops by a semitone halfway through.
+    private Optional<int[]> renderProbe(
+            File resamplerPath,
+            LyricConfig config,
+            File outputFile,
+            int pitchStep,
+            double pitchTempo) {
+        int numSteps = PROBE_LENGTH_MS / pitchStep;
+        int numHigh = numSteps / 2;
+        // "Bk" is 100 cents and "AA" is 0 cents. See PitchStringEncoder.
+        String pitchString =
+                "Bk#" + (numHigh - 1) + "#AA#" + (numSteps - numHigh - 1) + "#";
+        outputFile.delete();
+        runner.runProcess(
+                resamplerPath.getAbsolutePath(),
+                config.getPathToFile().getAbsolutePath(),
+                outputFile.getAbsolutePath(),
+                PitchUtils.noteNumToPitch(60),
+                "100",
+                "?",
+                Double.toString(config.getOffset()),
+                Double.toString(PROBE_LENGTH_MS + 1),
+                Double.toString(config.getConsonant()),
+                Double.toString(config.getCutoff()),
+                "100",
+                "0",
+                "T" + Double.toString(pitchTempo),
+                pitchString);
+        if (!outputFile.exists()) {
+            return Optional.absent();
+        }
+        Optional<WavData> wavData = soundFileReader.loadWavData(outputFile);
+        return wavData.isPresent() ? Optional.of(wavData.get().getSamples()) : Optional.absent();
+    }
+
+    // Sum of squared differences between two renders, counting missing samples as silence.
+    private static double getDistance(int[] first, int[] second) {
+        double distance = 0;
+        for (int i = 0; i < Math.max(first.length, second.length); i++) {
+            double diff = (i < first.length ? first[i] : 0) - (i < second.length ? second[i] : 0);
+            distance += diff * diff;
+        }
+        return distance;
+    }
+
+    /**
+     * Resamplers read pitch strings as 96 steps per beat at the tempo they're given, so steps of
+     * any other length are passed along by scaling that tempo.
+     */
+    private static double getPitchTempo(double tempo, int pitchStep) {
+        return tempo * (PitchCurve.DEFAULT_STEP_MS / (double) pitchStep);
+    }
+
+    private static String[] getResampleArgs(
+            File resamplerPath,
+            Note note,
+            double noteLength,
+            LyricConfig config,
+            File outputFile,
+            String pitchString,
+            int pitchStep,
+            double tempo,
+            String songFlags) {
         String inputFilePath = config.getPathToFile().getAbsolutePath();
         String outputFilePath = outputFile.getAbsolutePath();
         String pitch = PitchUtils.noteNumToPitch(note.getNoteNum());
-        String consonantVelocity = Double.toString(note.getVelocity() * (song.getTempo() / 125));
-        String flags = note.getNoteFlags().isEmpty() ? song.getFlags() : note.getNoteFlags();
+        String consonantVelocity = Double.toString(note.getVelocity() * (tempo / 125));
+        String flags = note.getNoteFlags().isEmpty() ? songFlags : note.getNoteFlags();
         String offset = Double.toString(config.getOffset());
         double startPoint = note.getStartPoint() + note.getAutoStartPoint();
-        double scaledLength = noteLength * (125 / song.getTempo()) + startPoint + 1;
+        double scaledLength = noteLength * (125 / tempo) + startPoint + 1;
         double consonantLength = config.getConsonant(); // TODO: Cutoff?
         String cutoff = Double.toString(config.getCutoff());
         String intensity = Integer.toString(note.getIntensity());
         String modulation = Integer.toString(note.getModulation()); // TODO: Set this song-wide?
-        String tempo = "T" + Double.toString(song.getTempo()); // TODO: Override with note tempo.
+        String pitchTempo = "T" + Double.toString(getPitchTempo(tempo, pitchStep));
 
-        // Call resampler.
-        runner.runProcess(
+        return new String[] {
                 resamplerPath.getAbsolutePath(),
                 inputFilePath,
                 outputFilePath,
@@ -53,24 +214,7 @@ public class Resampler {
                 cutoff,
                 intensity,
                 modulation,
-                tempo,
-                pitchString);
-    }
-
-    void resampleSilence(File resamplerPath, File outputFile, double duration) {
-        String desiredLength = Double.toString(duration + 1);
-        runner.runProcess(
-                resamplerPath.getAbsolutePath(),
-                SILENCE_PATH.getAbsolutePath(),
-                outputFile.getAbsolutePath(),
-                "C4",
-                "100",
-                "?",
-                "0",
-                desiredLength,
-                "0",
-                "0",
-                "100",
-                "0");
+                pitchTempo,
+                pitchString};
     }
 }
@@ -1,92 +1,54 @@
 package com.utsusynth.utsu.engine;
 
 import java.io.File;
-import com.google.inject.Inject;
-import com.utsusynth.utsu.model.song.Song;
 import com.utsusynth.utsu.model.song.Note;
 import com.utsusynth.utsu.model.voicebank.LyricConfig;
 
-public class Wavtool {
-    private final ExternalProcessRunner runner;
-
-    @Inject
-    Wavtool(ExternalProcessRunner runner) {
-        this.runner = runner;
-    }
+/**
+ * Applies a note's envelope to its resampled audio. Overlap with the previous note is handled
+ * when the notes are mixed together.
+ */
+public interface Wavtool {
+    /**
+     * Renders a single note from a resampled file.
+     *
+     * @param wavtoolPath Location of the user's chosen wavtool, for wavtools that need one.
+     * @param tempo The tempo where the note starts.
+     * @return 16-bit mono samples of the note with its envelope applied.
+     */
+    short[] renderNote(
+            File wavtoolPath,
+            double tempo,
+            Note note,
+            double noteLength,
+            File inputFile);
 
-    void addNewNote(
+    /** Returns a key that changes whenever the rendered note would change. */
+    String getCacheKey(
             File wavtoolPath,
-            Song song,
+            double tempo,
+            Note note,
+            double noteLength,
+            String inputCacheKey);
+
+    /**
+     * Returns how far, in real time, a note should overlap the end of the previous note.
+     *
+     * @param tempo The tempo where the note starts.
+     * @param includeOverlap false if the current note does not touch the previous one.
+     */
+    static double getOverlapMs(
+            double tempo,
             Note note,
             double noteLength,
             LyricConfig config,
-            File inputFile,
-            File outputFile,
-            boolean includeOverlap,
-            boolean triggerSynthesis) {
-        String outputFilePath = outputFile.getAbsolutePath();
-        String inputFilePath = inputFile.getAbsolutePath();
-        double startPoint = note.getStartPoint(); // TODO: Add auto start point.
-        String[] envelope = note.getFullEnvelope();
-
-        double overlap = Math.min(config.getOverlap(), note.getFadeIn());
-        double boundedOverlap = Math.max(0, Math.min(overlap, noteLength));
+            boolean includeOverlap) {
         // Ignore overlap if current note doesn't touch previous one.
         if (!includeOverlap) {
-            boundedOverlap = 0;
+            return 0;
         }
-
-        double scaleFactor = 125 / song.getTempo();
-
-        // Call wavtool to add new note onto the end of the output file.
-        runner.runProcess(
-                wavtoolPath.getAbsolutePath(),
-                outputFilePath,
-                inputFilePath,
-                Double.toString(startPoint),
-                Double.toString(noteLength * scaleFactor),
-                envelope[0], // p1
-                envelope[1], // p2
-                envelope[2], // p3
-                envelope[3], // v1
-                envelope[4], // v2
-                envelope[5], // v3
-                envelope[6], // v4
-                Double.toString(boundedOverlap * scaleFactor), // overlap
-                envelope[8], // p4
-                envelope[9], // p5
-                envelope[10], // v5
-                triggerSynthesis ? "LAST_NOTE" : ""); // Triggers final song processing.
-    }
-
-    void addSilence(
-            File wavtoolPath,
-            double duration,
-            File inputFile,
-            File outputFile,
-            boolean triggerSynthesis) {
-        String startPoint = "0.0";
-        String noteLength = Double.toString(duration); // Tempo already applied.
-        String[] envelope = new String[] {"0", "0", "0", "0", "0", "0", "0", "0", "0", "0", "0"};
-
-        // Call wavtool to add new note onto the end of the output file.
-        runner.runProcess(
-                wavtoolPath.getAbsolutePath(),
-                outputFile.getAbsolutePath(),
-                inputFile.getAbsolutePath(),
-                startPoint,
-                noteLength,
-                envelope[0], // p1
-                envelope[1], // p2
-                envelope[2], // p3
-                envelope[3], // v1
-                envelope[4], // v2
-                envelope[5], // v3
-                envelope[6], // v4
-                envelope[7], // overlap
-                envelope[8], // p4
-                envelope[9], // p5
-                envelope[10], // v5
-                triggerSynthesis ? "LAST_NOTE" : ""); // Triggers final song processing.
+        double overlap = Math.min(config.getOverlap(), note.getFadeIn());
+        double boundedOverlap = Math.max(0, Math.min(overlap, noteLength));
+        return boundedOverlap * (125 / tempo);
     }
 }
@@ -0,0 +1,88 @@
+package com.utsusynth.utsu.files;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import com.utsusynth.utsu.files.PitchTrackWriter.Unit;
+import com.utsusynth.utsu.model.song.Note;
+import com.utsusynth.utsu.model.song.NoteIterator;
+import com.utsusynth.utsu.model.song.Song;
+
+/**
+ * Reads a binary f0 track written by {@link PitchTrackWriter}, or by anything else that follows
+ * its format, and applies it to a song as a pitch override.
+ */
+public class PitchTrackReader {
+    /**
+     * Replaces the pitch of a song wherever the track has a value. Any override the song already
+     * had is replaced.
+     *
+     * @throws IOException If the track is not in a format this reader understands.
+     */
+    public void readTrack(InputStream in, Song song) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != PitchTrackWriter.MAGIC) {
+            throw new IOException("Not a pitch track.");
+        }
+        int version = data.readInt();
+        if (version != PitchTrackWriter.VERSION) {
+            throw new IOException("Unsupported pitch track version: " + version);
+        }
+        int unitIndex = data.readByte();
+        if (unitIndex < 0 || unitIndex >= Unit.values().length) {
+            throw new IOException("Unknown pitch track unit: " + unitIndex);
+        }
+        Unit unit = Unit.values()[unitIndex];
+        data.readFloat(); // Tempo, which pitch steps don't depend on.
+        int stepMs = data.readInt();
+        if (stepMs != song.getPitchStep()) {
+            throw new IOException(
+                    "Pitch track has steps of " + stepMs + " ticks, but the song uses "
+                            + song.getPitchStep());
+        }
+        int firstStep = data.readInt();
+        if (firstStep < 0) {
+            throw new IOException("Invalid first pitch step: " + firstStep);
+        }
+        int numTrackSteps = data.readInt();
+        if (numTrackSteps < 0) {
+            throw new IOException("Invalid number of pitch steps: " + numTrackSteps);
+        }
+        // Steps after the end of the song have no notes to change, so they're never read. This
+        // also keeps a corrupt header from asking for more memory than the song could use.
+        int numSongSteps = PitchTrackWriter.getNumSteps(song, stepMs);
+        int numSteps = Math.max(0, Math.min(numTrackSteps, numSongSteps - firstStep));
+
+        // Values measured from a note need to know which note each step belongs to.
+        int[] noteNums = new int[0];
+        if (unit == Unit.CENTS_FROM_NOTE) {
+            noteNums = new int[numSteps];
+            Arrays.fill(noteNums, -1);
+            NoteIterator notes = song.getNoteIterator();
+            while (notes.hasNext()) {
+                Note note = notes.next();
+                int noteFirstStep =
+                        PitchTrackWriter.endStep(notes.getCurDelta(), stepMs) - firstStep;
+                int noteLastStep = PitchTrackWriter
+                        .endStep(notes.getCurDelta() + note.getDuration(), stepMs) - firstStep - 1;
+                for (int i = Math.max(0, noteFirstStep); i <= noteLastStep && i < numSteps; i++) {
+                    noteNums[i] = note.getNoteNum();
+                }
+            }
+        }
+
+        float[] cents = new float[numSteps]; // Absolute, as the song stores it.
+        for (int i = 0; i < numSteps; i++) {
+            float value = data.readFloat();
+            if (unit == Unit.HERTZ) {
+                cents[i] = value > 0 ? (float) (1200 * Math.log(value / 440.0) / Math.log(2) + 6900)
+                        : Float.NaN;
+            } else {
+                cents[i] = noteNums[i] >= 0 ? noteNums[i] * 100 + value : Float.NaN;
+            }
+        }
+        song.setPitchOverride(firstStep, cents);
+    }
+}
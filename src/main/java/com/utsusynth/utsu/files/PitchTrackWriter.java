@@ -0,0 +1,95 @@
+package com.utsusynth.utsu.files;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import com.utsusynth.utsu.model.song.Note;
+import com.utsusynth.utsu.model.song.NoteIterator;
+import com.utsusynth.utsu.model.song.Song;
+import com.utsusynth.utsu.model.song.pitch.PitchCurve;
+
+/**
+ * Writes the evaluated pitch of a whole song to a binary f0 track, one value per pitch step. Steps
+ * are measured in ticks, with 480 ticks per beat, so a step of 5 ticks is 5 ms at a tempo of 125.
+ *
+ * <p>
+ * All numbers are big-endian. The track starts with the characters "UF0T", then an int version,
+ * a byte for the {@link Unit}, a float tempo, the int length of each step in ticks, the int index
+ * of the first step, and the int number of steps. One float per step follows, which is NaN for
+ * steps where no note is playing.
+ */
+public class PitchTrackWriter {
+    static final int MAGIC = 0x55463054; // "UF0T"
+    static final int VERSION = 1;
+
+    /** What the values of a pitch track measure. */
+    public enum Unit {
+        CENTS_FROM_NOTE, HERTZ,
+    }
+
+    /** Writes one note at a time, so the track is never held in memory all at once. */
+    public void writeTrack(Song song, OutputStream out, Unit unit) throws IOException {
+        PitchCurve.Snapshot pitchbends = song.getPitchSnapshot();
+        int stepMs = pitchbends.getStepMs();
+
+        // Every step up to the end of the last note is written.
+        int numSteps = getNumSteps(song, stepMs);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeByte(unit.ordinal());
+        data.writeFloat((float) song.getTempo());
+        data.writeInt(stepMs);
+        data.writeInt(0); // First step.
+        data.writeInt(numSteps);
+
+        int curStep = 0;
+        NoteIterator notes = song.getNoteIterator();
+        while (notes.hasNext()) {
+            Note note = notes.next();
+            int firstStep = Math.max(curStep, endStep(notes.getCurDelta(), stepMs));
+            int lastStep = endStep(notes.getCurDelta() + note.getDuration(), stepMs) - 1;
+            if (lastStep < firstStep) {
+                continue;
+            }
+            for (; curStep < firstStep; curStep++) {
+                data.writeFloat(Float.NaN); // No note here.
+            }
+            double noteNumPitch = note.getNoteNum() * 10; // In tenths.
+            double[] pitches = new double[lastStep - firstStep + 1]; // In tenths.
+            boolean[] isBent = new boolean[pitches.length];
+            pitchbends.evaluate(firstStep, lastStep, noteNumPitch, pitches, isBent);
+            for (double pitch : pitches) {
+                if (unit == Unit.HERTZ) {
+                    data.writeFloat((float) (440 * Math.pow(2, (pitch / 10 - 69) / 12)));
+                } else {
+                    data.writeFloat((float) ((pitch - noteNumPitch) * 10));
+                }
+            }
+            curStep = lastStep + 1;
+        }
+        for (; curStep < numSteps; curStep++) {
+            data.writeFloat(Float.NaN);
+        }
+        data.flush();
+    }
+
+    // The number of pitch steps from the start of a song to the end of its last note.
+    static int getNumSteps(Song song, int stepMs) {
+        int numSteps = 0;
+        NoteIterator notes = song.getNoteIterator();
+        while (notes.hasNext()) {
+            Note note = notes.next();
+            int noteEndStep = endStep(notes.getCurDelta() + note.getDuration(), stepMs);
+            numSteps = Math.max(numSteps, noteEndStep);
+        }
+        return numSteps;
+    }
+
+    // The first pitch step at or after this position.
+    static int endStep(int positionMs, int stepMs) {
+        return (int) Math.ceil(positionMs / (double) stepMs);
+    }
+}
@@ -1,6 +1,7 @@
 package com.utsusynth.utsu.files;
 
 import java.util.regex.Pattern;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.utsusynth.utsu.model.song.Note;
@@ -122,9 +123,12 @@ public class Ust12Reader {
 
     private int parseNote(String[] lines, int noteStart, Song.Builder builder) {
         Note note = new Note();
+        Optional<Double> tempo = Optional.absent(); // Tempo changes at this note if present.
         for (int i = noteStart; i < lines.length; i++) {
             String line = lines[i].trim();
-            if (line.startsWith("Length=") && !line.equals("Length=")) {
+            if (line.startsWith("Tempo=") && !line.equals("Tempo=")) {
+                tempo = Optional.of(Double.parseDouble(line.substring("Tempo=".length())));
+            } else if (line.startsWith("Length=") && !line.equals("Length=")) {
                 note.setDuration(Integer.parseInt(line.substring("Length=".length())));
             } else if (line.startsWith("Lyric=")) {
                 note.setLyric(line.substring("Lyric=".length()));
@@ -162,6 +166,9 @@ public class Ust12Reader {
                 } else {
                     builder.addNote(note);
                 }
+                if (tempo.isPresent()) {
+                    builder.addTempoChangeAtLatestNote(tempo.get());
+                }
                 return i;
             }
         }
@@ -198,6 +205,8 @@ public class Ust12Reader {
                 builder.setFlags(line.substring("Flags=".length()));
             } else if (line.startsWith("Mode2=")) {
                 builder.setMode2(Boolean.parseBoolean(line.substring("Mode2=".length())));
+            } else if (line.startsWith("PitchStep=")) {
+                builder.setPitchStep(Integer.parseInt(line.substring("PitchStep=".length())));
             } else if (HEADER_PATTERN.matcher(line).matches()) {
                 return i;
             }
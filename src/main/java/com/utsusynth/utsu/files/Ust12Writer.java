@@ -1,13 +1,16 @@
 package com.utsusynth.utsu.files;
 
 import java.io.PrintStream;
+import java.util.Map;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.utsusynth.utsu.common.RegionBounds;
 import com.utsusynth.utsu.common.utils.RoundUtils;
 import com.utsusynth.utsu.model.song.Note;
 import com.utsusynth.utsu.model.song.NoteIterator;
 import com.utsusynth.utsu.model.song.Song;
+import com.utsusynth.utsu.model.song.pitch.PitchCurve;
 import com.utsusynth.utsu.model.voicebank.LyricConfig;
 
 /**
@@ -76,7 +79,7 @@ public class Ust12Writer {
             if (noteHeader.isEmpty()) {
                 noteHeader = getNoteLabel(index);
             }
-            writeNote(noteHeader, note, ps);
+            writeNote(noteHeader, note, Optional.absent(), ps);
             notesWritten = true;
 
             // Write extra data in plugin format.
@@ -108,20 +111,33 @@ public class Ust12Writer {
         ps.println("UST Version1.2");
         writeSettings(song, ps);
 
+        ImmutableSortedMap<Integer, Double> tempoChanges = song.getTempoChanges();
         NoteIterator notes = song.getNoteIterator();
+        int prevPosition = Integer.MIN_VALUE; // Start of the last note written, in ms.
+        int totalDelta = 0;
         for (int index = 0; notes.hasNext(); index++) {
             Note note = notes.next();
             int prevDuration =
                     notes.peekPrev().isPresent() ? notes.peekPrev().get().getDuration() : 0;
             // Write rest notes.
+            int restPosition = totalDelta + prevDuration;
             for (int restLength : getRestNotes(prevDuration, note)) {
                 ps.println(getNoteLabel(index));
                 index++;
+                Optional<Double> tempo = getTempoChange(tempoChanges, prevPosition, restPosition);
+                if (tempo.isPresent()) {
+                    ps.println("Tempo=" + RoundUtils.roundDecimal(tempo.get(), "#.##"));
+                }
+                prevPosition = restPosition;
+                restPosition += restLength;
                 ps.println("Length=" + restLength);
                 ps.println("Lyric=R");
                 ps.println("NoteNum=60");
             }
-            writeNote(getNoteLabel(index), note, ps);
+            totalDelta += note.getDelta();
+            Optional<Double> tempo = getTempoChange(tempoChanges, prevPosition, totalDelta);
+            prevPosition = totalDelta;
+            writeNote(getNoteLabel(index), note, tempo, ps);
         }
         ps.println("[#TRACKEND]");
     }
@@ -134,6 +150,9 @@ public class Ust12Writer {
         ps.println("VoiceDir=" + song.getVoiceDir());
         ps.println("Flags=" + song.getFlags());
         ps.println("Mode2=" + (song.getMode2() ? "True" : "False"));
+        if (song.getPitchStep() != PitchCurve.DEFAULT_STEP_MS) {
+            ps.println("PitchStep=" + song.getPitchStep()); // Not understood by UTAU.
+        }
     }
 
     private ImmutableList<Integer> getRestNotes(int prevDuration, Note note) {
@@ -151,8 +170,25 @@ public class Ust12Writer {
         return builder.build();
     }
 
-    private void writeNote(String noteLabel, Note note, PrintStream ps) {
+    // Tempo changes that land between notes are moved to the next note, since UST files can only
+    // change tempo where a note starts.
+    private Optional<Double> getTempoChange(
+            ImmutableSortedMap<Integer, Double> tempoChanges,
+            int afterMs,
+            int atMs) {
+        if (atMs <= afterMs) {
+            return Optional.absent();
+        }
+        Map.Entry<Integer, Double> change =
+                tempoChanges.subMap(afterMs, false, atMs, true).lastEntry();
+        return change == null ? Optional.absent() : Optional.of(change.getValue());
+    }
+
+    private void writeNote(String noteLabel, Note note, Optional<Double> tempo, PrintStream ps) {
         ps.println(noteLabel);
+        if (tempo.isPresent()) {
+            ps.println("Tempo=" + RoundUtils.roundDecimal(tempo.get(), "#.##"));
+        }
         ps.println("Length=" + note.getDuration());
         ps.println("Lyric=" + note.getLyric());
         ps.println("NoteNum=" + note.getNoteNum());
@@ -1,6 +1,7 @@
 package com.utsusynth.utsu.files;
 
 import java.util.regex.Pattern;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.utsusynth.utsu.model.song.Note;
@@ -59,10 +60,13 @@ public class Ust20Reader {
 
     private int parseNote(String[] lines, int noteStart, Song.Builder builder) {
         Note note = new Note();
+        Optional<Double> tempo = Optional.absent(); // Tempo changes at this note if present.
         boolean outsideMainTrack = false;
         for (int i = noteStart; i < lines.length; i++) {
             String line = lines[i].trim();
-            if (line.startsWith("Delta=") && !line.equals("Delta=")) {
+            if (line.startsWith("Tempo=") && !line.equals("Tempo=")) {
+                tempo = Optional.of(Double.parseDouble(line.substring("Tempo=".length())));
+            } else if (line.startsWith("Delta=") && !line.equals("Delta=")) {
                 note.setDelta(Integer.parseInt(line.substring("Delta=".length())));
             } else if (line.startsWith("Duration=") && !line.equals("Duration=")) {
                 note.setDuration(Integer.parseInt(line.substring("Duration=".length())));
@@ -106,6 +110,9 @@ public class Ust20Reader {
                     builder.addInvalidNote(note);
                 } else {
                     builder.addNote(note);
+                    if (tempo.isPresent()) {
+                        builder.addTempoChangeAtLatestNote(tempo.get());
+                    }
                 }
                 return i;
             }
@@ -144,6 +151,8 @@ public class Ust20Reader {
                 builder.setFlags(line.substring("Flags=".length()));
             } else if (line.startsWith("Mode2=")) {
                 builder.setMode2(Boolean.parseBoolean(line.substring("Mode2=".length())));
+            } else if (line.startsWith("PitchStep=")) {
+                builder.setPitchStep(Integer.parseInt(line.substring("PitchStep=".length())));
             } else if (HEADER_PATTERN.matcher(line).matches()) {
                 return i;
             }
@@ -2,10 +2,13 @@ package com.utsusynth.utsu.files;
 
 import java.io.PrintStream;
 import java.util.Iterator;
+import java.util.Map;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.utsusynth.utsu.common.utils.RoundUtils;
 import com.utsusynth.utsu.model.song.Note;
 import com.utsusynth.utsu.model.song.Song;
+import com.utsusynth.utsu.model.song.pitch.PitchCurve;
 
 /**
  * Writes a song to a Unicode UST 2.0 file.
@@ -23,12 +26,25 @@ public class Ust20Writer {
         ps.println("VoiceDir=" + song.getVoiceDir());
         ps.println("Flags=" + song.getFlags());
         ps.println("Mode2=" + (song.getMode2() ? "True" : "False"));
+        if (song.getPitchStep() != PitchCurve.DEFAULT_STEP_MS) {
+            ps.println("PitchStep=" + song.getPitchStep()); // Not understood by UTAU.
+        }
 
+        ImmutableSortedMap<Integer, Double> tempoChanges = song.getTempoChanges();
         Iterator<Note> iterator = song.getNoteIterator();
         int index = 0;
+        int prevPosition = Integer.MIN_VALUE; // Start of the last note written, in ms.
         while (iterator.hasNext()) {
             Note note = iterator.next();
             ps.println(getNoteLabel(index));
+            // Tempo changes that land between notes are moved to the next note.
+            int position = Math.max(prevPosition, 0) + note.getDelta();
+            Map.Entry<Integer, Double> tempoChange =
+                    tempoChanges.subMap(prevPosition, false, position, true).lastEntry();
+            if (tempoChange != null) {
+                ps.println("Tempo=" + RoundUtils.roundDecimal(tempoChange.getValue(), "#.##"));
+            }
+            prevPosition = position;
             ps.println("Delta=" + note.getDelta());
             ps.println("Duration=" + note.getDuration());
             ps.println("Length=" + note.getLength());
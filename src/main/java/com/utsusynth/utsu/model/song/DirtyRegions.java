@@ -0,0 +1,79 @@
+package com.utsusynth.utsu.model.song;
+
+import java.util.TreeMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.utsusynth.utsu.common.RegionBounds;
+
+/**
+ * Keeps track of which parts of a song, in ms, changed in each of its recent revisions, so that
+ * anything made from an older revision can tell what it needs to redo. Only a limited number of
+ * revisions are remembered, and asking about anything older treats the whole song as changed.
+ */
+class DirtyRegions {
+    private static final int MAX_REVISIONS = 500;
+
+    // Regions that changed, by the revision they changed in.
+    private final TreeMap<Integer, RangeSet<Integer>> regionsByRevision = new TreeMap<>();
+    // Changes made in or before this revision have been forgotten.
+    private int forgottenRevision;
+
+    /** @param firstRevision Anything older than this counts as out of date everywhere. */
+    DirtyRegions(int firstRevision) {
+        this.forgottenRevision = firstRevision;
+    }
+
+    /** Marks a region as changed in a revision, which can't be older than any marked before. */
+    void mark(int revision, int minMs, int maxMs) {
+        if (maxMs <= minMs) {
+            return;
+        }
+        RangeSet<Integer> regions = regionsByRevision.get(revision);
+        if (regions == null) {
+            regions = TreeRangeSet.create();
+            regionsByRevision.put(revision, regions);
+            while (regionsByRevision.size() > MAX_REVISIONS) {
+                forgottenRevision = regionsByRevision.pollFirstEntry().getKey();
+            }
+        }
+        regions.add(Range.closedOpen(minMs, maxMs));
+    }
+
+    /** Marks the whole song as changed in a revision. */
+    void markAll(int revision) {
+        regionsByRevision.clear();
+        forgottenRevision = revision;
+    }
+
+    /** Every region that changed after a revision, in order and with overlaps merged. */
+    ImmutableList<RegionBounds> getRegionsSince(int revision) {
+        if (revision < forgottenRevision) {
+            return ImmutableList.of(RegionBounds.WHOLE_SONG);
+        }
+        RangeSet<Integer> changed = TreeRangeSet.create();
+        for (RangeSet<Integer> regions : regionsByRevision.tailMap(revision, false).values()) {
+            changed.addAll(regions);
+        }
+        ImmutableList.Builder<RegionBounds> builder = ImmutableList.builder();
+        for (Range<Integer> range : changed.asRanges()) {
+            builder.add(new RegionBounds(range.lowerEndpoint(), range.upperEndpoint()));
+        }
+        return builder.build();
+    }
+
+    /** Whether anything in a region changed after a revision. */
+    boolean isDirty(RegionBounds region, int revision) {
+        if (revision < forgottenRevision) {
+            return true;
+        }
+        Range<Integer> range = Range.closedOpen(region.getMinMs(), region.getMaxMs());
+        for (RangeSet<Integer> regions : regionsByRevision.tailMap(revision, false).values()) {
+            if (regions.intersects(range)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
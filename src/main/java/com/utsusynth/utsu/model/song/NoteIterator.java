@@ -1,38 +1,61 @@
 package com.utsusynth.utsu.model.song;
 
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
 import com.google.common.base.Optional;
 import com.utsusynth.utsu.common.RegionBounds;
 
 /**
- * Iterator over song notes using a linked list implementation.
+ * Iterator over song notes using a linked list implementation. The first note in bounds is found
+ * by looking up its position, so iterating over the end of a long song is as fast as iterating
+ * over the start.
  */
 public class NoteIterator implements Iterator<Note> {
     private final RegionBounds bounds;
+    private final NavigableMap<Integer, NoteNode> nodeMap;
 
     private Optional<NoteNode> prevNode;
     private Optional<NoteNode> curNode;
-    int curIndex;
+    private int startPosition; // Where the first note in bounds starts, if there is one.
+    private int startIndex; // Index of the first note in bounds, or -1 if not counted yet.
+    private int numVisited; // Number of notes returned so far.
     int curDelta;
 
-    NoteIterator(Optional<NoteNode> startNode, RegionBounds bounds) {
+    NoteIterator(NavigableMap<Integer, NoteNode> nodeMap, RegionBounds bounds) {
         this.bounds = bounds;
+        this.nodeMap = nodeMap;
         this.prevNode = Optional.absent();
-        this.curNode = startNode;
-        this.curIndex = 0;
+        this.numVisited = 0;
+        this.startIndex = -1;
+
+        // Notes don't overlap, so the first note in bounds is either the last one to start at or
+        // before the bounds or the one after it.
+        Map.Entry<Integer, NoteNode> startEntry = nodeMap.floorEntry(bounds.getMinMs());
+        if (startEntry == null) {
+            startEntry = nodeMap.firstEntry();
+        }
+        this.curNode = Optional.absent();
         this.curDelta = 0;
+        if (startEntry != null) {
+            curNode = Optional.of(startEntry.getValue());
+            curDelta = startEntry.getKey() - startEntry.getValue().getNote().getDelta();
+        }
 
         // Start at first note contained within bounds, if it exists.
         while (curNode.isPresent()) {
             int newDelta = curDelta + curNode.get().getNote().getDelta();
             if (bounds.intersects(newDelta, newDelta + curNode.get().getNote().getDuration())) {
                 break;
+            } else if (newDelta >= bounds.getMaxMs()) {
+                curNode = Optional.absent(); // No later note can be in bounds.
             } else {
-                curIndex++;
                 curDelta = newDelta;
                 curNode = curNode.get().getNext();
             }
         }
+        this.startPosition = curNode.isPresent() ? curDelta + curNode.get().getNote().getDelta()
+                : Integer.MAX_VALUE;
     }
 
     @Override
@@ -46,7 +69,7 @@ public class NoteIterator implements Iterator<Note> {
             return null;
         }
         Note note = curNode.get().getNote();
-        curIndex++;
+        numVisited++;
         curDelta += note.getDelta();
         prevNode = curNode;
 
@@ -63,8 +86,15 @@ public class NoteIterator implements Iterator<Note> {
         return note;
     }
 
+    /**
+     * Index of the next note in the whole song. Notes before the bounds are counted the first time
+     * this is called, which takes time proportional to how many there are.
+     */
     public int getCurIndex() {
-        return curIndex;
+        if (startIndex < 0) {
+            startIndex = nodeMap.headMap(startPosition, false).size();
+        }
+        return startIndex + numVisited;
     }
 
     public int getCurDelta() {
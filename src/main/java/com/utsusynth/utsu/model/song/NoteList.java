@@ -1,18 +1,21 @@
 package com.utsusynth.utsu.model.song;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import com.google.common.base.Optional;
 import com.utsusynth.utsu.common.RegionBounds;
 import com.utsusynth.utsu.common.exception.NoteAlreadyExistsException;
 import com.utsusynth.utsu.model.voicebank.Voicebank;
 
 /**
- * Implementation of a linked list of SongNotes, including head.
+ * Implementation of a linked list of SongNotes, including head. Nodes are also indexed by their
+ * position in a balanced tree, so finding, inserting, and removing a note or finding where a
+ * region starts never walks the list.
  */
 public class NoteList implements Iterable<Note> {
     private Optional<NoteNode> head;
-    private Map<Integer, NoteNode> nodeMap;
+    private NavigableMap<Integer, NoteNode> nodeMap; // Keyed by absolute position in ms.
 
     public class Builder {
         private NoteList noteList;
@@ -30,7 +33,7 @@ public class NoteList implements Iterable<Note> {
 
         private Builder setHead(Optional<NoteNode> newHead) {
             noteList.head = newHead;
-            noteList.nodeMap = new HashMap<>();
+            noteList.nodeMap = new TreeMap<>();
             totalDelta = 0;
             overrideDelta = 0;
             if (newHead.isPresent()) {
@@ -136,7 +139,7 @@ public class NoteList implements Iterable<Note> {
 
     public NoteList() {
         this.head = Optional.absent();
-        this.nodeMap = new HashMap<>();
+        this.nodeMap = new TreeMap<>();
     }
 
     /**
@@ -149,30 +152,24 @@ public class NoteList implements Iterable<Note> {
      */
     NoteNode insertNote(Note noteToInsert, int deltaToInsert) throws NoteAlreadyExistsException {
         NoteNode inserted;
+        Map.Entry<Integer, NoteNode> prevEntry = nodeMap.floorEntry(deltaToInsert);
         if (!head.isPresent()) {
             this.head = Optional.of(new NoteNode(noteToInsert));
             this.head.get().getNote().setDelta(deltaToInsert);
             inserted = this.head.get();
-        } else if (head.get().getNote().getDelta() > deltaToInsert) {
+        } else if (prevEntry == null) {
             this.head = Optional.of(this.head.get().insertFirstNote(noteToInsert, deltaToInsert));
             inserted = this.head.get();
         } else {
-            inserted = this.head.get().insertNote(noteToInsert, deltaToInsert, 0);
+            // Start from the closest note before the new one, so at most one node is visited.
+            NoteNode prevNode = prevEntry.getValue();
+            int beforePrevDelta = prevEntry.getKey() - prevNode.getNote().getDelta();
+            inserted = prevNode.insertNote(noteToInsert, deltaToInsert, beforePrevDelta);
         }
         nodeMap.put(deltaToInsert, inserted);
         return inserted;
     }
 
-    /**
-     * Adds a note to the note list, starting search at a specific node.
-     */
-    NoteNode insertNote(Note noteToInsert, int deltaToInsert, NoteNode startNode, int startDelta)
-            throws NoteAlreadyExistsException {
-        NoteNode inserted = startNode.insertNote(noteToInsert, deltaToInsert, startDelta);
-        nodeMap.put(deltaToInsert, inserted);
-        return inserted;
-    }
-
     /**
      * Removes a note from the note list.
      * 
@@ -222,10 +219,10 @@ public class NoteList implements Iterable<Note> {
 
     @Override
     public NoteIterator iterator() {
-        return new NoteIterator(this.head, RegionBounds.WHOLE_SONG);
+        return new NoteIterator(this.nodeMap, RegionBounds.WHOLE_SONG);
     }
 
     NoteIterator boundedIterator(RegionBounds bounds) {
-        return new NoteIterator(this.head, bounds);
+        return new NoteIterator(this.nodeMap, bounds);
     }
 }
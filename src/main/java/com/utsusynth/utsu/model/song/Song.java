@@ -1,19 +1,26 @@
 package com.utsusynth.utsu.model.song;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Range;
 import com.utsusynth.utsu.common.RegionBounds;
 import com.utsusynth.utsu.common.data.MutateResponse;
+import com.utsusynth.utsu.common.data.NoteConfigData;
 import com.utsusynth.utsu.common.data.NoteData;
 import com.utsusynth.utsu.common.data.NoteUpdateData;
-import com.utsusynth.utsu.common.data.PitchbendData;
 import com.utsusynth.utsu.common.exception.NoteAlreadyExistsException;
 import com.utsusynth.utsu.common.utils.PitchUtils;
 import com.utsusynth.utsu.model.song.pitch.PitchCurve;
+import com.utsusynth.utsu.model.song.pitch.portamento.PortamentoFactory;
 import com.utsusynth.utsu.model.voicebank.Voicebank;
 import com.utsusynth.utsu.model.voicebank.VoicebankContainer;
 
@@ -23,6 +30,8 @@ import com.utsusynth.utsu.model.voicebank.VoicebankContainer;
 public class Song {
     public static final int MIN_TEMPO = 50;
     public static final int MAX_TEMPO = 260;
+    public static final int MIN_PITCH_STEP = 1;
+    public static final int MAX_PITCH_STEP = 20;
 
     private final VoicebankContainer voicebank;
     private final NoteStandardizer standardizer;
@@ -35,9 +44,18 @@ public class Song {
     private String flags;
     private boolean mode2 = true;
     private Optional<File> instrumental; // Not yet written to UST.
+    private int pitchStep; // In ticks.
+    private TreeMap<Integer, Double> tempoChanges; // New tempos by where they start.
+    private TempoMap tempoMap;
 
-    // Set to a value after rendering song, INVALID whenever song changes.
+    // Set to a value after rendering song, INVALID while a render is incomplete.
     private RegionBounds lastRenderedRegion = RegionBounds.INVALID;
+    private int lastRenderedRevision = 0;
+
+    // Incremented whenever notes change, so renders can tell when they are out of date.
+    private volatile int revision = 0;
+    // Which parts of the song each recent revision changed.
+    private DirtyRegions dirtyRegions = new DirtyRegions(0);
 
     // Notes. (Anything marked with [#0000]-[#9999], [#TRACKEND] marks the end of these)
     private NoteList noteList;
@@ -45,13 +63,23 @@ public class Song {
     // Pitchbends, kept in a format suitable for rendering.
     private PitchCurve pitchbends;
 
+    // The latest snapshot, and where notes have changed since it was taken. Only notes that
+    // changed are copied into the next snapshot.
+    private SongSnapshot latestSnapshot;
+    private final TreeSet<Integer> changedPositions = new TreeSet<>();
+
     public class Builder {
         private final Song newSong;
         private final NoteList.Builder noteListBuilder;
+        private final PitchCurve.Batch pitchbendBatch;
+        // Where the latest note of any kind starts and where the note after it will, in ms.
+        private int latestPositionMs;
+        private int nextPositionMs;
 
         private Builder(Song newSong) {
             this.newSong = newSong;
             this.noteListBuilder = newSong.noteList.toBuilder();
+            this.pitchbendBatch = newSong.pitchbends.startBatch();
         }
 
         public Builder setTempo(double tempo) {
@@ -64,6 +92,38 @@ public class Song {
             return this;
         }
 
+        /**
+         * Changes the tempo from a position onward. A change at the start of the song sets the
+         * song's tempo instead, so that setting the tempo later on still has an effect.
+         */
+        public Builder addTempoChange(int positionMs, double tempo) {
+            if (positionMs <= 0) {
+                return setTempo(tempo);
+            }
+            // Ignore tempo changes with unreasonable tempos.
+            if (tempo >= MIN_TEMPO && tempo <= MAX_TEMPO) {
+                newSong.tempoChanges.put(positionMs, tempo);
+            } else {
+                System.out.println("Warning: Tempo of " + tempo + " is out of bounds.");
+            }
+            return this;
+        }
+
+        /** Changes the tempo from the start of the latest note onward, even if it's a rest. */
+        public Builder addTempoChangeAtLatestNote(double tempo) {
+            return addTempoChange(latestPositionMs, tempo);
+        }
+
+        public Builder setPitchStep(int pitchStep) {
+            // Use default pitch step if file has an unreasonable one.
+            if (pitchStep >= MIN_PITCH_STEP && pitchStep <= MAX_PITCH_STEP) {
+                newSong.pitchStep = pitchStep;
+            } else {
+                System.out.println("Warning: Pitch step of " + pitchStep + " is out of bounds.");
+            }
+            return this;
+        }
+
         public Builder setProjectName(String projectName) {
             newSong.projectName = projectName;
             return this;
@@ -101,17 +161,21 @@ public class Song {
             noteListBuilder.appendNote(note);
 
             // Add pitchbends for this note.
-            newSong.pitchbends.addPitchbends(
+            pitchbendBatch.addPitchbends(
                     noteListBuilder.getLatestDelta(),
                     note.getLength(),
                     note.getPitchbends(),
                     prevNote.isPresent() ? prevNote.get().getNoteNum() : note.getNoteNum(),
                     note.getNoteNum());
+            latestPositionMs = noteListBuilder.getLatestDelta();
+            nextPositionMs = latestPositionMs + note.getDuration();
             return this;
         }
 
         public Builder addRestNote(Note note) {
             noteListBuilder.appendRestNote(note);
+            latestPositionMs = nextPositionMs;
+            nextPositionMs += note.getDuration();
             return this;
         }
 
@@ -123,6 +187,13 @@ public class Song {
         public Song build() {
             noteListBuilder.standardize(newSong.standardizer, newSong.voicebank.get());
             newSong.noteList = noteListBuilder.build();
+            newSong.tempoMap = new TempoMap(newSong.tempo, newSong.tempoChanges);
+            pitchbendBatch.apply();
+            if (newSong.pitchbends.getStepMs() != newSong.pitchStep) {
+                // Pitchbends are stored by step, so they're added again at the new step length.
+                newSong.pitchbends =
+                        buildPitchCurve(newSong.noteList.iterator(), newSong.pitchStep);
+            }
             return newSong;
         }
     }
@@ -141,16 +212,24 @@ public class Song {
         this.projectName = "(no title)";
         this.flags = "";
         this.instrumental = Optional.absent();
+        this.pitchStep = PitchCurve.DEFAULT_STEP_MS;
+        this.tempoChanges = new TreeMap<>();
+        this.tempoMap = new TempoMap(this.tempo, this.tempoChanges);
     }
 
-    public Builder toBuilder() {
+    public synchronized Builder toBuilder() {
         // Returns the builder of a new Song with this one's attributes.
         // The old Song's noteList and pitchbends objects are used in the new Song.
-        return new Builder(
-                new Song(this.voicebank, this.standardizer, this.noteList, this.pitchbends))
-                        .setTempo(this.tempo).setProjectName(this.projectName)
-                        .setOutputFile(this.outputFile).setFlags(this.flags).setMode2(this.mode2)
-                        .setInstrumental(this.instrumental);
+        Song newSong = new Song(this.voicebank, this.standardizer, this.noteList, this.pitchbends);
+        // Both songs share notes, so renders of this song are out of date once the new one exists.
+        newSong.revision = ++this.revision;
+        newSong.dirtyRegions = new DirtyRegions(newSong.revision);
+        dirtyRegions.markAll(revision);
+        Builder builder = new Builder(newSong).setTempo(this.tempo).setProjectName(this.projectName)
+                .setOutputFile(this.outputFile).setFlags(this.flags).setMode2(this.mode2)
+                .setInstrumental(this.instrumental).setPitchStep(this.pitchStep);
+        newSong.tempoChanges.putAll(this.tempoChanges);
+        return builder;
     }
 
     /**
@@ -159,60 +238,185 @@ public class Song {
      * @param toAdd In-order list of notes to add.
      * @throws NoteAlreadyExistsException
      */
-    public void addNotes(List<NoteData> notesToAdd) {
+    public synchronized void addNotes(List<NoteData> notesToAdd) {
         if (notesToAdd.isEmpty()) {
             System.out.println("Error: Add notes called on empty list!");
             return;
         }
-        NoteNode curNode = null; // Where to start search for place to insert new note.
-        int searchStartMs = 0;
+        revision++;
         for (NoteData toAdd : notesToAdd) {
-            Note note = new Note();
-            // New note's delta/length may be overridden while inserting into note list.
-            note.setDelta(toAdd.getPosition());
-            note.safeSetDuration(toAdd.getDuration());
-            note.safeSetLength(toAdd.getDuration());
-            note.setLyric(toAdd.getLyric());
-            note.setNoteNum(PitchUtils.pitchToNoteNum(toAdd.getPitch()));
-            if (toAdd.getEnvelope().isPresent()) {
-                note.setEnvelope(toAdd.getEnvelope().get());
-            }
-            if (toAdd.getPitchbend().isPresent()) {
-                note.setPitchbends(toAdd.getPitchbend().get());
-            }
-            if (toAdd.getConfigData().isPresent()) {
-                note.setConfigData(toAdd.getConfigData().get());
-            }
+            insertNote(toAdd);
+        }
+    }
 
-            int positionMs = toAdd.getPosition();
-            try {
-                if (curNode == null) {
-                    curNode = this.noteList.insertNote(note, positionMs);
-                } else {
-                    curNode = this.noteList.insertNote(note, positionMs, curNode, searchStartMs);
+    // Inserts a note without adding its pitchbends. Returns whether the note was added.
+    private boolean insertNote(NoteData toAdd) {
+        Note note = new Note();
+        // New note's delta/length may be overridden while inserting into note list.
+        note.setDelta(toAdd.getPosition());
+        note.safeSetDuration(toAdd.getDuration());
+        note.safeSetLength(toAdd.getDuration());
+        note.setLyric(toAdd.getLyric());
+        note.setNoteNum(PitchUtils.pitchToNoteNum(toAdd.getPitch()));
+        if (toAdd.getEnvelope().isPresent()) {
+            note.setEnvelope(toAdd.getEnvelope().get());
+        }
+        if (toAdd.getPitchbend().isPresent()) {
+            note.setPitchbends(toAdd.getPitchbend().get());
+        }
+        if (toAdd.getConfigData().isPresent()) {
+            note.setConfigData(toAdd.getConfigData().get());
+        }
+
+        try {
+            NoteNode inserted = this.noteList.insertNote(note, toAdd.getPosition());
+            markChanged(toAdd.getPosition(), inserted);
+            return true;
+        } catch (NoteAlreadyExistsException e) {
+            // Swallow this for now.
+            return false;
+        }
+    }
+
+    /** Starts changing many notes at once. See {@link Batch}. */
+    public Batch startBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Changes to many notes, which are applied together. Every removal and addition is made
+     * first, in that order, followed by any modifications. Then the notes around each change are
+     * standardized, with a single update to the pitchbends.
+     */
+    public class Batch {
+        private final Set<Integer> removedNotes = new TreeSet<>();
+        private final List<NoteData> addedNotes = new ArrayList<>();
+        private final List<NoteData> modifiedNotes = new ArrayList<>();
+
+        private Batch() {}
+
+        /** Removes the note at a position once the batch is applied. */
+        public Batch removeNote(int positionMs) {
+            removedNotes.add(positionMs);
+            return this;
+        }
+
+        /** Adds a note once the batch is applied. */
+        public Batch addNote(NoteData toAdd) {
+            addedNotes.add(toAdd);
+            return this;
+        }
+
+        /** Modifies a note once the batch is applied. See {@link Song#modifyNote}. */
+        public Batch modifyNote(NoteData toModify) {
+            modifiedNotes.add(toModify);
+            return this;
+        }
+
+        /**
+         * Applies every change in the batch, then empties it.
+         *
+         * @return The notes that were standardized, like {@link Song#standardizeNotes}, as one
+         *         response for each group of changes that are near each other, in order. Removed
+         *         notes are not included.
+         */
+        public List<MutateResponse> apply() {
+            synchronized (Song.this) {
+                revision++;
+                // Where notes that need to be standardized might be.
+                TreeSet<Integer> dirtyPositions = new TreeSet<>();
+                PitchCurve.Batch pitchbendBatch = pitchbends.startBatch();
+                for (int position : removedNotes) {
+                    NoteNode removed = noteList.removeNote(position);
+                    if (removed == null) {
+                        continue;
+                    }
+                    markChanged(position, removed);
+                    pitchbendBatch.removePitchbends(
+                            position,
+                            removed.getNote().getDuration(),
+                            removed.getNote().getPitchbends());
+                    // The neighbors of each removed note have to be standardized again.
+                    if (removed.getPrev().isPresent()) {
+                        dirtyPositions.add(position - removed.getNote().getDelta());
+                    }
+                    if (removed.getNext().isPresent()) {
+                        dirtyPositions.add(position + removed.getNote().getLength());
+                    }
+                }
+                for (NoteData toAdd : addedNotes) {
+                    if (insertNote(toAdd)) {
+                        dirtyPositions.add(toAdd.getPosition());
+                    }
+                }
+                for (NoteData toModify : modifiedNotes) {
+                    NoteNode node = noteList.getNote(toModify.getPosition());
+                    if (node != null) {
+                        markChanged(toModify.getPosition(), node);
+                        applyModification(node.getNote(), toModify, pitchbendBatch);
+                        dirtyPositions.add(toModify.getPosition());
+                    }
+                }
+                removedNotes.clear();
+                addedNotes.clear();
+                modifiedNotes.clear();
+
+                // Neighbors may have been removed too, so only standardize notes that exist.
+                dirtyPositions.removeIf(position -> noteList.getNote(position) == null);
+                List<MutateResponse> responses = new ArrayList<>();
+                Optional<Integer> groupStart = Optional.absent();
+                int groupEnd = 0;
+                for (int position : dirtyPositions) {
+                    if (groupStart.isPresent() && !isNearby(groupEnd, position)) {
+                        responses.add(
+                                standardizeNotes(groupStart.get(), groupEnd, pitchbendBatch));
+                        groupStart = Optional.absent();
+                    }
+                    if (!groupStart.isPresent()) {
+                        groupStart = Optional.of(position);
+                    }
+                    groupEnd = position;
                 }
-                searchStartMs = positionMs - curNode.getNote().getDelta();
-            } catch (NoteAlreadyExistsException e) {
-                // Swallow this for now.
+                if (groupStart.isPresent()) {
+                    responses.add(standardizeNotes(groupStart.get(), groupEnd, pitchbendBatch));
+                }
+                pitchbendBatch.apply();
+                return responses;
+            }
+        }
+    }
+
+    // Whether a note is one or two notes after another. Standardizing two notes this close
+    // separately would standardize the notes around them twice.
+    private boolean isNearby(int positionMs, int laterPositionMs) {
+        Optional<Integer> next = getNextNote(positionMs);
+        for (int i = 0; i < 2 && next.isPresent(); i++) {
+            if (next.get() >= laterPositionMs) {
+                return true;
             }
+            next = getNextNote(next.get());
         }
+        return false;
     }
 
     /** Removes all notes at the specified positions from the song object. */
-    public MutateResponse removeNotes(Set<Integer> positions) {
+    public synchronized MutateResponse removeNotes(Set<Integer> positions) {
         if (positions.isEmpty()) {
             System.out.println("Error: Remove notes called on empty collection!");
             return null;
         }
+        revision++;
 
         HashSet<NoteUpdateData> removedNotes = new HashSet<>(); // Return value.
         int firstNeighbor = Integer.MAX_VALUE;
         int lastNeighbor = Integer.MIN_VALUE;
 
         NoteNode curNode;
+        PitchCurve.Batch pitchbendBatch = this.pitchbends.startBatch();
         for (int position : positions) {
             curNode = this.noteList.removeNote(position);
-            this.pitchbends.removePitchbends(
+            markChanged(position, curNode);
+            pitchbendBatch.removePitchbends(
                     position,
                     curNode.getNote().getDuration(),
                     curNode.getNote().getPitchbends());
@@ -237,6 +441,7 @@ public class Song {
                 }
             }
         }
+        pitchbendBatch.apply();
 
         Optional<NoteUpdateData> prevNote = Optional.absent();
         Optional<NoteUpdateData> nextNote = Optional.absent();
@@ -252,32 +457,59 @@ public class Song {
     }
 
     /** Modifies a note in-place without changing its lyric, position, or duration. */
-    public NoteUpdateData modifyNote(NoteData toModify) {
+    public synchronized NoteUpdateData modifyNote(NoteData toModify) {
+        revision++;
         int positionMs = toModify.getPosition();
         NoteNode node = this.noteList.getNote(positionMs);
+        markChanged(positionMs, node);
         Note note = node.getNote();
-        if (toModify.getEnvelope().isPresent()) {
-            note.setEnvelope(toModify.getEnvelope().get());
-        }
+        PitchCurve.Batch pitchbendBatch = this.pitchbends.startBatch();
+        applyModification(note, toModify, pitchbendBatch);
         if (toModify.getPitchbend().isPresent()) {
-            this.pitchbends.removePitchbends(positionMs, note.getDuration(), note.getPitchbends());
-            PitchbendData newPitchbend = toModify.getPitchbend().get();
-            note.setPitchbends(newPitchbend);
-
             int prevNoteNum =
                     node.getPrev().isPresent() ? node.getPrev().get().getNote().getNoteNum()
                             : note.getNoteNum();
-            this.pitchbends.addPitchbends(
+            pitchbendBatch.addPitchbends(
                     positionMs,
                     note.getDuration(),
-                    newPitchbend,
+                    note.getPitchbends(),
                     prevNoteNum,
                     note.getNoteNum());
         }
+        pitchbendBatch.apply();
         return note.getUpdateData(positionMs);
     }
 
-    public MutateResponse standardizeNotes(int firstPosition, int lastPosition) {
+    // Changes a note's envelope and pitchbends, removing its old pitchbends if they change.
+    private void applyModification(
+            Note note,
+            NoteData toModify,
+            PitchCurve.Batch pitchbendBatch) {
+        if (toModify.getEnvelope().isPresent()) {
+            note.setEnvelope(toModify.getEnvelope().get());
+        }
+        if (toModify.getPitchbend().isPresent()) {
+            pitchbendBatch.removePitchbends(
+                    toModify.getPosition(),
+                    note.getDuration(),
+                    note.getPitchbends());
+            note.setPitchbends(toModify.getPitchbend().get());
+        }
+    }
+
+    public synchronized MutateResponse standardizeNotes(int firstPosition, int lastPosition) {
+        revision++;
+        PitchCurve.Batch pitchbendBatch = this.pitchbends.startBatch();
+        MutateResponse response = standardizeNotes(firstPosition, lastPosition, pitchbendBatch);
+        pitchbendBatch.apply();
+        return response;
+    }
+
+    // Standardizes notes, leaving the changes to their pitchbends in a batch.
+    private MutateResponse standardizeNotes(
+            int firstPosition,
+            int lastPosition,
+            PitchCurve.Batch pitchbendBatch) {
         LinkedList<NoteUpdateData> updatedNotes = new LinkedList<>();
         Optional<NoteUpdateData> prevNeighbor = Optional.absent();
         Optional<NoteUpdateData> nextNeighbor = Optional.absent();
@@ -303,6 +535,7 @@ public class Song {
             Note note = curNode.get().getNote();
             // Standardize.
             curNode.get().standardize(standardizer, voicebank.get());
+            markChanged(curPosition, curNode.get());
             if (!nextNeighbor.isPresent() || curPosition < startPosition) {
                 updatedNotes.addFirst(note.getUpdateData(curPosition));
             }
@@ -310,8 +543,8 @@ public class Song {
             int prevNoteNum = curNode.get().getPrev().isPresent()
                     ? curNode.get().getPrev().get().getNote().getNoteNum()
                     : note.getNoteNum();
-            this.pitchbends.removePitchbends(curPosition, note.getDuration(), note.getPitchbends());
-            this.pitchbends.addPitchbends(
+            pitchbendBatch.removePitchbends(curPosition, note.getDuration(), note.getPitchbends());
+            pitchbendBatch.addPitchbends(
                     curPosition,
                     note.getDuration(),
                     note.getPitchbends(),
@@ -328,11 +561,118 @@ public class Song {
         // Include the prev neighbor of the first note, if present. No need to change pitch.
         if (curNode.isPresent()) {
             curNode.get().standardize(standardizer, voicebank.get());
+            markChanged(curPosition, curNode.get());
             prevNeighbor = Optional.of(curNode.get().getNote().getUpdateData(curPosition));
         }
         return new MutateResponse(updatedNotes, prevNeighbor, nextNeighbor);
     }
 
+    /** Changes the config of each note in a region, in order. */
+    public synchronized void setNoteConfigs(RegionBounds region, List<NoteConfigData> configs) {
+        revision++;
+        NoteIterator notes = noteList.boundedIterator(region);
+        Iterator<NoteConfigData> configIterator = configs.iterator();
+        while (notes.hasNext() && configIterator.hasNext()) {
+            notes.next().setConfigData(configIterator.next());
+            markChanged(notes.getCurDelta(), noteList.getNote(notes.getCurDelta()));
+        }
+    }
+
+    // Marks a note as changed, along with the neighbors whose deltas and lengths depend on it.
+    // Everything from the start of the previous note to the end of the next one may sound
+    // different afterward.
+    private void markChanged(int positionMs, NoteNode node) {
+        changedPositions.add(positionMs);
+        int minMs = positionMs;
+        int maxMs = positionMs + node.getNote().getDuration();
+        if (node.getPrev().isPresent()) {
+            minMs = positionMs - node.getNote().getDelta();
+            changedPositions.add(minMs);
+        }
+        if (node.getNext().isPresent()) {
+            int nextPositionMs = positionMs + node.getNote().getLength();
+            changedPositions.add(nextPositionMs);
+            maxMs = Math.max(
+                    maxMs,
+                    nextPositionMs + node.getNext().get().getNote().getDuration());
+        }
+        dirtyRegions.mark(revision, minMs, maxMs);
+    }
+
+    // Marks the steps of the current pitch override as changed.
+    private void markPitchOverride() {
+        Range<Integer> steps = pitchbends.getOverrideSteps();
+        dirtyRegions.mark(
+                revision,
+                steps.lowerEndpoint() * pitchbends.getStepMs(),
+                steps.upperEndpoint() * pitchbends.getStepMs());
+    }
+
+    /**
+     * Captures the song as it is now. Only notes that changed since the previous snapshot are
+     * copied, and the same snapshot is returned until the song changes again.
+     */
+    public synchronized SongSnapshot snapshot() {
+        if (latestSnapshot != null && latestSnapshot.getRevision() == revision) {
+            return latestSnapshot;
+        }
+        ImmutableSortedMap<Integer, Note> notes;
+        if (latestSnapshot == null) {
+            ImmutableSortedMap.Builder<Integer, Note> builder = ImmutableSortedMap.naturalOrder();
+            NoteIterator iterator = noteList.iterator();
+            while (iterator.hasNext()) {
+                Note note = iterator.next();
+                builder.put(iterator.getCurDelta(), note.copy());
+            }
+            notes = builder.build();
+        } else {
+            TreeMap<Integer, Note> newNotes = new TreeMap<>(latestSnapshot.getNotes());
+            for (int positionMs : changedPositions) {
+                NoteNode node = noteList.getNote(positionMs);
+                if (node == null) {
+                    newNotes.remove(positionMs);
+                } else {
+                    newNotes.put(positionMs, node.getNote().copy());
+                }
+            }
+            notes = ImmutableSortedMap.copyOfSorted(newNotes);
+        }
+        changedPositions.clear();
+        latestSnapshot = new SongSnapshot(notes, pitchbends.snapshot(), revision, this);
+        return latestSnapshot;
+    }
+
+    /**
+     * Makes a new song that is the same as this one was when a snapshot was taken. The new song
+     * counts as a later revision than this one, so renders of either are redone.
+     */
+    public synchronized Song restore(SongSnapshot snapshot) {
+        Song newSong = new Song(
+                voicebank,
+                standardizer,
+                new NoteList(),
+                new PitchCurve(new PortamentoFactory()));
+        newSong.revision = ++this.revision;
+        newSong.dirtyRegions = new DirtyRegions(newSong.revision);
+        Builder builder = new Builder(newSong).setTempo(snapshot.getTempo())
+                .setProjectName(snapshot.getProjectName()).setOutputFile(snapshot.getOutputFile())
+                .setVoiceDirectory(snapshot.getVoiceDir()).setFlags(snapshot.getFlags())
+                .setMode2(snapshot.getMode2()).setInstrumental(snapshot.getInstrumental())
+                .setPitchStep(snapshot.getPitchStep());
+        newSong.tempoChanges.putAll(snapshot.getTempoChanges());
+        for (Note note : snapshot.getNotes().values()) {
+            builder.addNote(note.copy());
+        }
+        builder.build();
+        float[] overrideCents = snapshot.getPitchSnapshot().getOverrideCents();
+        if (overrideCents.length > 0) {
+            newSong.pitchbends.setPitchOverride(
+                    snapshot.getPitchSnapshot().getOverrideFirstStep(),
+                    overrideCents);
+        }
+        return newSong;
+    }
+
     public LinkedList<NoteData> getNotes() {
         LinkedList<NoteData> notes = new LinkedList<>();
         NoteIterator iterator = noteList.iterator();
@@ -371,14 +711,45 @@ public class Song {
     }
 
     // Can be changed without converting song to a builder and back.
-    public void setRendered(RegionBounds region) {
+    public synchronized void setRendered(RegionBounds region, int renderedRevision) {
         this.lastRenderedRegion = region;
+        this.lastRenderedRevision = renderedRevision;
     }
 
-    public RegionBounds getLastRenderedRegion() {
+    /**
+     * The region that was last rendered, if that render is still up to date. Edits elsewhere in
+     * the song don't make it out of date.
+     */
+    public synchronized RegionBounds getLastRenderedRegion() {
+        if (dirtyRegions.isDirty(lastRenderedRegion, lastRenderedRevision)) {
+            return RegionBounds.INVALID;
+        }
         return lastRenderedRegion;
     }
 
+    /** A number that only ever goes up, and changes every time the song is edited. */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Every part of the song that changed after a revision, in order and with overlaps merged.
+     * Includes the whole song if it was replaced or the revision is too old to remember.
+     */
+    public synchronized List<RegionBounds> getChangedRegions(int sinceRevision) {
+        return dirtyRegions.getRegionsSince(sinceRevision);
+    }
+
+    /** Whether anything in a region changed after a revision. */
+    public synchronized boolean hasChanged(RegionBounds region, int sinceRevision) {
+        return dirtyRegions.isDirty(region, sinceRevision);
+    }
+
+    /** The length of each pitch step, in ticks. */
+    public int getPitchStep() {
+        return pitchStep;
+    }
+
     public String getProjectName() {
         return projectName;
     }
@@ -407,10 +778,21 @@ public class Song {
         return flags;
     }
 
+    /** The tempo at the start of the song. */
     public double getTempo() {
         return tempo;
     }
 
+    /** Where the tempo changes partway through the song, and what it changes to. */
+    public ImmutableSortedMap<Integer, Double> getTempoChanges() {
+        return ImmutableSortedMap.copyOfSorted(tempoChanges);
+    }
+
+    /** Converts positions in this song to real time, following any tempo changes. */
+    public TempoMap getTempoMap() {
+        return tempoMap;
+    }
+
     public boolean getMode2() {
         return mode2;
     }
@@ -423,7 +805,54 @@ public class Song {
         return noteList.getSize();
     }
 
-    public String getPitchString(int firstPitchStep, int lastPitchStep, int noteNum) {
-        return pitchbends.renderPitchbends(firstPitchStep, lastPitchStep, noteNum);
+    /**
+     * Replaces the pitch of a range of pitch steps, regardless of the pitchbends of the notes
+     * there. Replaces any previous override.
+     *
+     * @param cents Absolute pitch of each step, in cents. NaN leaves a step's pitch alone.
+     */
+    public synchronized void setPitchOverride(int firstPitchStep, float[] cents) {
+        revision++;
+        markPitchOverride();
+        pitchbends.setPitchOverride(firstPitchStep, cents);
+        markPitchOverride();
+    }
+
+    public synchronized void clearPitchOverride() {
+        revision++;
+        markPitchOverride();
+        pitchbends.clearPitchOverride();
+    }
+
+    /** Pitchbends as they are now, which stay the same however the song is edited afterwards. */
+    public PitchCurve.Snapshot getPitchSnapshot() {
+        return pitchbends.snapshot();
+    }
+
+    /**
+     * Pitchbends as they are now, using pitch steps of a different length than the song's. Any
+     * pitch override is left out, since it is only defined at the song's own pitch step.
+     */
+    public PitchCurve.Snapshot getPitchSnapshot(int pitchStep) {
+        if (pitchStep == pitchbends.getStepMs()) {
+            return pitchbends.snapshot();
+        }
+        return buildPitchCurve(noteList.iterator(), pitchStep).snapshot();
+    }
+
+    // Adds the pitchbends of every note to a new pitch curve.
+    static PitchCurve buildPitchCurve(NoteIterator notes, int pitchStep) {
+        PitchCurve curve = new PitchCurve(new PortamentoFactory(), pitchStep);
+        while (notes.hasNext()) {
+            Note note = notes.next();
+            Optional<Note> prevNote = notes.peekPrev();
+            curve.addPitchbends(
+                    notes.getCurDelta(),
+                    note.getDuration(),
+                    note.getPitchbends(),
+                    prevNote.isPresent() ? prevNote.get().getNoteNum() : note.getNoteNum(),
+                    note.getNoteNum());
+        }
+        return curve;
     }
 }
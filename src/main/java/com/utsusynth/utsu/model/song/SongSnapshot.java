@@ -0,0 +1,144 @@
+package com.utsusynth.utsu.model.song;
+
+import java.io.File;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedMap;
+import com.utsusynth.utsu.common.RegionBounds;
+import com.utsusynth.utsu.model.song.pitch.PitchCurve;
+
+/**
+ * A song's notes, pitchbends, and settings at one point in time, which stay the same however the
+ * song is edited afterwards. Snapshots can be read from any thread, and a song can be put back the
+ * way it was when a snapshot was taken.
+ *
+ * <p>
+ * Successive snapshots of a song share every note that didn't change between them, so keeping
+ * many of them around costs little more than the notes that were edited.
+ */
+public class SongSnapshot {
+    // Copies of the song's notes by position, which are never changed once in a snapshot.
+    private final ImmutableSortedMap<Integer, Note> notes;
+    private final PitchCurve.Snapshot pitchbends;
+    private final int revision;
+
+    // Settings.
+    private final double tempo;
+    private final ImmutableSortedMap<Integer, Double> tempoChanges;
+    private final TempoMap tempoMap;
+    private final int pitchStep;
+    private final String projectName;
+    private final File outputFile;
+    private final File voiceDir;
+    private final String flags;
+    private final boolean mode2;
+    private final Optional<File> instrumental;
+
+    // Notes that can be iterated over, made from the snapshot's notes the first time it's needed.
+    private NoteList noteList;
+
+    SongSnapshot(
+            ImmutableSortedMap<Integer, Note> notes,
+            PitchCurve.Snapshot pitchbends,
+            int revision,
+            Song song) {
+        this.notes = notes;
+        this.pitchbends = pitchbends;
+        this.revision = revision;
+        this.tempo = song.getTempo();
+        this.tempoChanges = song.getTempoChanges();
+        this.tempoMap = song.getTempoMap();
+        this.pitchStep = song.getPitchStep();
+        this.projectName = song.getProjectName();
+        this.outputFile = song.getOutputFile();
+        this.voiceDir = song.getVoiceDir();
+        this.flags = song.getFlags();
+        this.mode2 = song.getMode2();
+        this.instrumental = song.getInstrumental();
+    }
+
+    ImmutableSortedMap<Integer, Note> getNotes() {
+        return notes;
+    }
+
+    /** The song's revision when this snapshot was taken. */
+    public int getRevision() {
+        return revision;
+    }
+
+    public int getNumNotes() {
+        return notes.size();
+    }
+
+    /**
+     * Iterates over copies of the snapshot's notes. The copies are shared by every iterator of
+     * this snapshot, but changing them never affects the song or the snapshot's other uses.
+     */
+    public synchronized NoteIterator getNoteIterator(RegionBounds bounds) {
+        if (noteList == null) {
+            NoteList.Builder builder = new NoteList().toBuilder();
+            for (Note note : notes.values()) {
+                builder.appendNote(note.copy());
+            }
+            noteList = builder.build();
+        }
+        return noteList.boundedIterator(bounds);
+    }
+
+    /** Pitchbends as they were when this snapshot was taken. */
+    public PitchCurve.Snapshot getPitchSnapshot() {
+        return pitchbends;
+    }
+
+    /**
+     * Pitchbends as they were when this snapshot was taken, using pitch steps of a different length
+     * than the song's. Any pitch override is left out.
+     */
+    public PitchCurve.Snapshot getPitchSnapshot(int pitchStep) {
+        if (pitchStep == pitchbends.getStepMs()) {
+            return pitchbends;
+        }
+        return Song.buildPitchCurve(getNoteIterator(RegionBounds.WHOLE_SONG), pitchStep)
+                .snapshot();
+    }
+
+    public double getTempo() {
+        return tempo;
+    }
+
+    public ImmutableSortedMap<Integer, Double> getTempoChanges() {
+        return tempoChanges;
+    }
+
+    public TempoMap getTempoMap() {
+        return tempoMap;
+    }
+
+    /** The length of each pitch step, in ticks. */
+    public int getPitchStep() {
+        return pitchStep;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public File getVoiceDir() {
+        return voiceDir;
+    }
+
+    public String getFlags() {
+        return flags;
+    }
+
+    public boolean getMode2() {
+        return mode2;
+    }
+
+    public Optional<File> getInstrumental() {
+        return instrumental;
+    }
+}
@@ -0,0 +1,108 @@
+package com.utsusynth.utsu.model.song;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Converts between positions in a song, measured in ticks, and real time for a song whose tempo
+ * can change. Each tempo applies from its position until the next change. The real time of every
+ * change is worked out ahead of time, so each conversion is a binary search.
+ *
+ * <p>
+ * Like everywhere else in Utsu, positions are named in "ms" because a tick is a millisecond at a
+ * tempo of 125.
+ */
+public class TempoMap {
+    private final int[] positions; // Where each tempo starts. The first is always 0.
+    private final double[] tempos;
+    private final double[] realStarts; // Real time where each tempo starts, in ms.
+
+    /**
+     * @param initialTempo The tempo from the start of the song until the first change.
+     * @param changes New tempos by the position they start at. Changes at or before the start of
+     *        the song replace the initial tempo.
+     */
+    public TempoMap(double initialTempo, SortedMap<Integer, Double> changes) {
+        SortedMap<Integer, Double> laterChanges = changes.tailMap(1);
+        int numTempos = laterChanges.size() + 1;
+        positions = new int[numTempos];
+        tempos = new double[numTempos];
+        realStarts = new double[numTempos];
+        tempos[0] = changes.headMap(1).isEmpty() ? initialTempo
+                : changes.get(changes.headMap(1).lastKey());
+        int i = 1;
+        for (Map.Entry<Integer, Double> change : laterChanges.entrySet()) {
+            positions[i] = change.getKey();
+            tempos[i] = change.getValue();
+            realStarts[i] =
+                    realStarts[i - 1] + (positions[i] - positions[i - 1]) * getScale(i - 1);
+            i++;
+        }
+    }
+
+    /** The tempo at a position. */
+    public double getTempo(double positionMs) {
+        return tempos[findTempo(positionMs)];
+    }
+
+    /**
+     * The tempo that would play a length of time that starts at a position in the same real time
+     * as the tempo map does. This is just the tempo at that position unless the tempo changes
+     * partway through.
+     */
+    public double getAverageTempo(double positionMs, double durationMs) {
+        int index = findTempo(positionMs);
+        if (durationMs <= 0 || index == findTempo(positionMs + durationMs)) {
+            return tempos[index];
+        }
+        return durationMs * 125.0 / toRealMs(positionMs, durationMs);
+    }
+
+    /**
+     * Converts a position to real time since the start of the song. Positions before the start
+     * use the first tempo.
+     */
+    public double toRealMs(double positionMs) {
+        int index = findTempo(positionMs);
+        return realStarts[index] + (positionMs - positions[index]) * getScale(index);
+    }
+
+    /** Converts a length of time that starts at a position to real time. */
+    public double toRealMs(double positionMs, double durationMs) {
+        int index = findTempo(positionMs);
+        if (index == findTempo(positionMs + durationMs)) {
+            return durationMs * getScale(index); // No tempo changes along the way.
+        }
+        return toRealMs(positionMs + durationMs) - toRealMs(positionMs);
+    }
+
+    /** Converts real time since the start of the song back to a position. */
+    public double toPositionMs(double realMs) {
+        int index = Arrays.binarySearch(realStarts, realMs);
+        if (index < 0) {
+            index = Math.max(0, -index - 2); // The last tempo to start before this time.
+        }
+        return positions[index] + (realMs - realStarts[index]) / getScale(index);
+    }
+
+    // Finds the last tempo that starts at or before a position.
+    private int findTempo(double positionMs) {
+        int low = 0;
+        int high = positions.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (positions[mid] <= positionMs) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Real ms per tick for a tempo.
+    private double getScale(int index) {
+        return 125.0 / tempos[index];
+    }
+}
@@ -1,36 +1,217 @@
 package com.utsusynth.utsu.model.song.pitch;
 
-import java.util.HashMap;
-import com.google.common.base.Optional;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
 import com.google.inject.Inject;
 import com.utsusynth.utsu.common.data.PitchbendData;
 import com.utsusynth.utsu.model.song.pitch.portamento.Portamento;
 import com.utsusynth.utsu.model.song.pitch.portamento.PortamentoFactory;
 
 /**
- * Stores up to one pitchbend for each "pitch step" in a song. There are always 96 pitch steps per
- * beat, regardless of tempo.
+ * Stores the portamentos and vibratos of a song, each along with the range of "pitch steps" it
+ * covers. Pitch steps are measured in ticks, so their length doesn't depend on tempo. By default
+ * a step is 5 ticks, or 96 steps per beat. At each step, the portamento and vibrato of the latest
+ * note covering that step are used.
+ *
+ * <p>
+ * Pitchbends are rendered from a {@link Snapshot}, which later edits never change. A render can
+ * take one snapshot when it starts and keep using it while the song is edited.
  */
 public class PitchCurve {
-    // Map of pitch step number to attached pitchbend, if any.
+    // Each rendering thread reuses one encoder for every note it renders.
+    private static final ThreadLocal<PitchStringEncoder> encoders =
+            ThreadLocal.withInitial(PitchStringEncoder::new);
+
+    private static final int MAX_RENDERED_NOTES = 4096;
+
+    /** The length of a pitch step that every resampler understands, in ticks. */
+    public static final int DEFAULT_STEP_MS = 5;
+
     // TODO: Limit the minimum and maximum x-values of portamento/vibrato.
-    private final HashMap<Integer, Pitchbend> pitchbends;
+    private final PitchSegments<Portamento> portamentos;
+    private final PitchSegments<Vibrato> vibratos;
+    // Absolute pitches in cents that replace the pitchbends of some steps, NaN where they don't.
+    private float[] overrideCents = new float[0];
+    private int overrideFirstStep = 0;
     private final PortamentoFactory portamentoFactory;
+    private final int stepMs;
+
+    // Pitch strings that were already rendered, dropped once a pitchbend over them changes.
+    private final LinkedHashMap<RenderedRange, String> renderedNotes;
+    private int version = 0; // Guarded by renderedNotes.
+
+    private Snapshot latestSnapshot; // Guarded by this, cleared when pitchbends change.
+
+    // The steps and note number a pitch string was rendered for.
+    private static class RenderedRange {
+        private final Range<Integer> steps;
+        private final int noteNum;
+
+        private RenderedRange(int firstStep, int lastStep, int noteNum) {
+            this.steps = Range.closed(firstStep, lastStep);
+            this.noteNum = noteNum;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RenderedRange)) {
+                return false;
+            }
+            RenderedRange range = (RenderedRange) other;
+            return steps.equals(range.steps) && noteNum == range.noteNum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(steps, noteNum);
+        }
+    }
 
     @Inject
     public PitchCurve(PortamentoFactory portamentoFactory) {
-        this.pitchbends = new HashMap<Integer, Pitchbend>();
+        this(portamentoFactory, DEFAULT_STEP_MS);
+    }
+
+    /** Creates a pitch curve with steps of a different length, measured in ticks. */
+    public PitchCurve(PortamentoFactory portamentoFactory, int stepMs) {
+        this.stepMs = stepMs;
+        this.portamentos = new PitchSegments<>();
+        this.vibratos = new PitchSegments<>();
         this.portamentoFactory = new PortamentoFactory();
+        this.renderedNotes = new LinkedHashMap<RenderedRange, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RenderedRange, String> eldest) {
+                return size() > MAX_RENDERED_NOTES; // Forget the least recently used note.
+            }
+        };
     }
 
     /** Adds pitchbends for a single note. */
-    public void addPitchbends(
+    public synchronized void addPitchbends(
             int noteStartMs,
             int noteLengthMs,
             PitchbendData data,
             int prevNoteNum,
             int curNoteNum) {
+        RangeSet<Integer> changedSteps = TreeRangeSet.create();
+        addSegments(noteStartMs, noteLengthMs, data, prevNoteNum, curNoteNum, changedSteps);
+        forgetRenders(changedSteps);
+    }
+
+    /** Removes pitchbends for a single note. */
+    public synchronized void removePitchbends(
+            int noteStartMs,
+            int noteLengthMs,
+            PitchbendData data) {
+        if (data.getPBS().isEmpty() || data.getPBW().isEmpty()) {
+            // TODO: Handle this.
+            return;
+        }
+        RangeSet<Integer> changedSteps = TreeRangeSet.create();
+        portamentos.removeNotes(ImmutableSet.of(noteStartMs), changedSteps);
+        vibratos.removeNotes(ImmutableSet.of(noteStartMs), changedSteps);
+        forgetRenders(changedSteps);
+    }
+
+    /** Starts changing the pitchbends of many notes at once. See {@link Batch}. */
+    public Batch startBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Changes to the pitchbends of many notes, which are applied together. Every removal happens
+     * in a single pass over the pitchbends, and steps changed by several notes are only dropped
+     * from the rendered pitch strings once. Removals are applied before additions.
+     */
+    public class Batch {
+        private final Set<Integer> removedNotes = new HashSet<>();
+        private final List<AddedNote> addedNotes = new ArrayList<>();
+
+        private Batch() {}
+
+        /** Adds pitchbends for a single note once the batch is applied. */
+        public void addPitchbends(
+                int noteStartMs,
+                int noteLengthMs,
+                PitchbendData data,
+                int prevNoteNum,
+                int curNoteNum) {
+            addedNotes.add(
+                    new AddedNote(noteStartMs, noteLengthMs, data, prevNoteNum, curNoteNum));
+        }
+
+        /** Removes pitchbends for a single note once the batch is applied. */
+        public void removePitchbends(int noteStartMs, int noteLengthMs, PitchbendData data) {
+            if (data.getPBS().isEmpty() || data.getPBW().isEmpty()) {
+                // TODO: Handle this.
+                return;
+            }
+            removedNotes.add(noteStartMs);
+        }
+
+        /** Applies every change in the batch, then empties it. */
+        public void apply() {
+            synchronized (PitchCurve.this) {
+                RangeSet<Integer> changedSteps = TreeRangeSet.create();
+                portamentos.removeNotes(removedNotes, changedSteps);
+                vibratos.removeNotes(removedNotes, changedSteps);
+                for (AddedNote note : addedNotes) {
+                    addSegments(
+                            note.noteStartMs,
+                            note.noteLengthMs,
+                            note.data,
+                            note.prevNoteNum,
+                            note.curNoteNum,
+                            changedSteps);
+                }
+                forgetRenders(changedSteps);
+            }
+            removedNotes.clear();
+            addedNotes.clear();
+        }
+    }
+
+    // The pitchbends of a note waiting to be added by a batch.
+    private static class AddedNote {
+        private final int noteStartMs;
+        private final int noteLengthMs;
+        private final PitchbendData data;
+        private final int prevNoteNum;
+        private final int curNoteNum;
+
+        private AddedNote(
+                int noteStartMs,
+                int noteLengthMs,
+                PitchbendData data,
+                int prevNoteNum,
+                int curNoteNum) {
+            this.noteStartMs = noteStartMs;
+            this.noteLengthMs = noteLengthMs;
+            this.data = data;
+            this.prevNoteNum = prevNoteNum;
+            this.curNoteNum = curNoteNum;
+        }
+    }
+
+    // Adds the portamentos and vibrato of a note, recording which steps they cover.
+    private void addSegments(
+            int noteStartMs,
+            int noteLengthMs,
+            PitchbendData data,
+            int prevNoteNum,
+            int curNoteNum,
+            RangeSet<Integer> changedSteps) {
         if (data.getPBS().isEmpty() || data.getPBW().isEmpty()) {
             // TODO: Handle this.
             return;
@@ -57,14 +238,13 @@ public class PitchCurve {
             Portamento portamento = portamentoFactory
                     .makePortamento(startMs, pitchStart, endMs, pitchEnd, pitchShape);
 
-            // Add portamento to all affected steps on the pitch curve.
-            for (int j = nextPitchStep(startMs); j <= prevPitchStep(endMs); j++) {
-                if (pitchbends.containsKey(j)) {
-                    pitchbends.get(j).addPortamento(noteStartMs, portamento);
-                } else {
-                    pitchbends.put(j, Pitchbend.makePitchbend(noteStartMs, portamento));
-                }
-            }
+            // Portamento covers all affected steps on the pitch curve.
+            portamentos.add(
+                    noteStartMs,
+                    nextPitchStep(startMs),
+                    prevPitchStep(endMs),
+                    portamento);
+            addSteps(changedSteps, nextPitchStep(startMs), prevPitchStep(endMs));
             // End of the current pitchbend is the start of the next one.
             startMs = endMs;
             pitchStart = pitchEnd;
@@ -86,152 +266,288 @@ public class PitchCurve {
                     data.getVibrato(5),
                     data.getVibrato(6),
                     data.getVibrato(8));
-            for (int i = nextPitchStep(vibratoStartMs); i < prevPitchStep(vibratoEndMs); i++) {
-                if (pitchbends.containsKey(i)) {
-                    pitchbends.get(i).addVibrato(vibrato);
-                } else {
-                    pitchbends.put(i, Pitchbend.makePitchbend(vibrato));
-                }
+            vibratos.add(
+                    noteStartMs,
+                    nextPitchStep(vibratoStartMs),
+                    prevPitchStep(vibratoEndMs) - 1,
+                    vibrato);
+            addSteps(changedSteps, nextPitchStep(vibratoStartMs), prevPitchStep(vibratoEndMs) - 1);
+        }
+    }
+
+    public int getStepMs() {
+        return stepMs;
+    }
+
+    /**
+     * Replaces the pitch of a range of steps, whatever pitchbends the notes there have. Replaces
+     * any previous override.
+     *
+     * @param cents The absolute pitch of each step from firstStep onward, in cents (a MIDI note
+     *        number times 100). Steps set to NaN keep the pitch from their pitchbends.
+     */
+    public synchronized void setPitchOverride(int firstStep, float[] cents) {
+        clearPitchOverride();
+        overrideCents = cents.clone();
+        overrideFirstStep = firstStep;
+        RangeSet<Integer> changedSteps = TreeRangeSet.create();
+        addSteps(changedSteps, firstStep, firstStep + cents.length - 1);
+        forgetRenders(changedSteps);
+    }
+
+    /** Goes back to using pitchbends for every step. */
+    public synchronized void clearPitchOverride() {
+        RangeSet<Integer> changedSteps = TreeRangeSet.create();
+        addSteps(changedSteps, overrideFirstStep, overrideFirstStep + overrideCents.length - 1);
+        forgetRenders(changedSteps);
+        overrideCents = new float[0];
+        overrideFirstStep = 0;
+    }
+
+    /** The steps whose pitch is overridden, which is an empty range if there's no override. */
+    public synchronized Range<Integer> getOverrideSteps() {
+        return Range.closedOpen(overrideFirstStep, overrideFirstStep + overrideCents.length);
+    }
+
+    /**
+     * Captures the pitchbends as they are now. Taking a snapshot copies the pitchbends once, after
+     * which snapshots are shared until the next edit.
+     */
+    public synchronized Snapshot snapshot() {
+        if (latestSnapshot == null) {
+            int snapshotVersion;
+            synchronized (renderedNotes) {
+                snapshotVersion = version;
             }
+            latestSnapshot = new Snapshot(
+                    portamentos.copy(),
+                    vibratos.copy(),
+                    overrideCents, // Never changed once set, only replaced.
+                    overrideFirstStep,
+                    snapshotVersion);
         }
+        return latestSnapshot;
     }
 
-    /** Removes pitchbends for a single note. */
-    public void removePitchbends(int noteStartMs, int noteLengthMs, PitchbendData data) {
-        if (data.getPBS().isEmpty() || data.getPBW().isEmpty()) {
-            // TODO: Handle this.
-            return;
+    /** Renders pitchbends from a snapshot of how they are now. */
+    public String renderPitchbends(int firstStep, int lastStep, int noteNum) {
+        return snapshot().renderPitchbends(firstStep, lastStep, noteNum);
+    }
+
+    /** Pitchbends at one point in time, which can be rendered from any thread. */
+    public class Snapshot {
+        private final PitchSegments<Portamento> portamentos;
+        private final PitchSegments<Vibrato> vibratos;
+        private final float[] overrideCents;
+        private final int overrideFirstStep;
+        private final int snapshotVersion;
+
+        private Snapshot(
+                PitchSegments<Portamento> portamentos,
+                PitchSegments<Vibrato> vibratos,
+                float[] overrideCents,
+                int overrideFirstStep,
+                int snapshotVersion) {
+            this.portamentos = portamentos;
+            this.vibratos = vibratos;
+            this.overrideCents = overrideCents;
+            this.overrideFirstStep = overrideFirstStep;
+            this.snapshotVersion = snapshotVersion;
         }
-        double startMs = noteStartMs + data.getPBS().get(0);
-        double endMs = startMs;
-        for (double width : data.getPBW()) {
-            endMs += width;
-        }
-        for (int i = nextPitchStep(startMs); i <= prevPitchStep(endMs); i++) {
-            // Remove portamento from each pitch step it covers.
-            if (pitchbends.containsKey(i)) {
-                Pitchbend pitchbend = pitchbends.get(i);
-                pitchbend.removePortamento(noteStartMs);
-                if (pitchbend.isEmpty()) {
-                    pitchbends.remove(i);
+
+        /** The length of each pitch step, in ticks. */
+        public int getStepMs() {
+            return stepMs;
+        }
+
+        /** The first step of the pitch override, if there is one. */
+        public int getOverrideFirstStep() {
+            return overrideFirstStep;
+        }
+
+        /** Absolute pitch of each overridden step in cents, or nothing if there's no override. */
+        public float[] getOverrideCents() {
+            return overrideCents.clone();
+        }
+
+        /**
+         * Writes out pitchbends for a section into a format readable by resamplers. Sections
+         * whose pitchbends haven't changed since they were last rendered aren't rendered again.
+         */
+        public String renderPitchbends(int firstStep, int lastStep, int noteNum) {
+            if (lastStep < firstStep) {
+                return "";
+            }
+            // Rendered strings are only shared while this snapshot is of the latest pitchbends.
+            RenderedRange range = new RenderedRange(firstStep, lastStep, noteNum);
+            synchronized (renderedNotes) {
+                String rendered = version == snapshotVersion ? renderedNotes.get(range) : null;
+                if (rendered != null) {
+                    return rendered;
+                }
+            }
+            String rendered = renderSteps(firstStep, lastStep, noteNum);
+            synchronized (renderedNotes) {
+                if (version == snapshotVersion) {
+                    renderedNotes.put(range, rendered);
                 }
             }
+            return rendered;
         }
 
-        // Remove vibrato from the entire note.
-        if (data.getVibrato(0) > 0 || data.getVibrato(1) > 0) {
-            double noteEndMs = noteStartMs + noteLengthMs;
-            for (int i = nextPitchStep(noteStartMs); i < prevPitchStep(noteEndMs); i++) {
-                if (pitchbends.containsKey(i)) {
-                    Pitchbend pitchbend = pitchbends.get(i);
-                    pitchbend.removeVibrato();
-                    if (pitchbend.isEmpty()) {
-                        pitchbends.remove(i);
+        private String renderSteps(int firstStep, int lastStep, int noteNum) {
+            double[] pitches = new double[lastStep - firstStep + 1]; // In tenths.
+            boolean[] isBent = new boolean[pitches.length];
+            evaluate(firstStep, lastStep, 0, pitches, isBent);
+
+            PitchStringEncoder result = encoders.get();
+            result.reset();
+            double noteNumPitch = noteNum * 10; // In tenths. (1/10 of a semitone)
+            for (int i = 0; i < pitches.length; i++) {
+                int diff = (int) ((pitches[i] - noteNumPitch) * 10); // In cents.
+                result.appendCents(diff);
+                if (!isBent[i]) {
+                    // Write a stretch of no pitchbends, which all share the same pitch.
+                    int emptyEnd = i;
+                    while (emptyEnd < pitches.length && !isBent[emptyEnd]) {
+                        emptyEnd++;
                     }
+                    int numEmpty = emptyEnd - i;
+                    if (numEmpty > 1) {
+                        result.appendRepeats(numEmpty - 1);
+                    }
+                    i = emptyEnd - 1; // Move step to the end of the empty stretch.
                 }
             }
+            return result.toString();
         }
-    }
 
-    /** Writes out pitchbends for a section into a format readable by resamplers. */
-    public String renderPitchbends(int firstStep, int lastStep, int noteNum) {
-        String result = "";
-        double noteNumPitch = noteNum * 10; // In tenths. (1/10 of a semitone)
-        double defaultPitch = 0; // In tenths. (1/10 of a semitone)
-        for (int scanStep = firstStep; scanStep <= lastStep; scanStep++) {
-            // Scan through the steps until first default pitch is found.
-            if (pitchbends.containsKey(scanStep)) {
-                Optional<Portamento> portamento = pitchbends.get(scanStep).getPortamento();
-                if (portamento.isPresent()) {
-                    defaultPitch = portamento.get().getStartPitch();
+        /**
+         * Works out the absolute pitch of every step in a range. Steps without a pitchbend keep
+         * the pitch of the portamento before them.
+         *
+         * @param defaultPitch Pitch of steps without a pitchbend when the range has no portamento
+         *        to take a pitch from, in tenths.
+         * @param pitches Set to the pitch of each step, in tenths of a semitone.
+         * @param isBent Set to whether each step has a pitchbend or override.
+         */
+        public void evaluate(
+                int firstStep,
+                int lastStep,
+                double defaultPitch,
+                double[] pitches,
+                boolean[] isBent) {
+            // Work out which portamento and vibrato apply to each step, if any.
+            int[] stepPortamentos = new int[lastStep - firstStep + 1];
+            int[] stepVibratos = new int[lastStep - firstStep + 1];
+            portamentos.resolve(firstStep, lastStep, stepPortamentos);
+            vibratos.resolve(firstStep, lastStep, stepVibratos);
+
+            // Evaluate each portamento and vibrato over all of its steps at once.
+            double[] portamentoPitches = new double[stepPortamentos.length]; // In tenths.
+            double[] vibratoPitches = new double[stepVibratos.length]; // In tenths.
+            applyRuns(portamentos, stepPortamentos, firstStep, stepMs, portamentoPitches);
+            applyRuns(vibratos, stepVibratos, firstStep, stepMs, vibratoPitches);
+
+            for (int portamento : stepPortamentos) {
+                // Scan through the steps until first default pitch is found.
+                if (portamento >= 0) {
+                    defaultPitch = portamentos.get(portamento).getStartPitch();
                     break;
                 }
             }
-        }
 
-        for (int step = firstStep; step <= lastStep; step++) {
-            if (pitchbends.containsKey(step)) {
-                // Write pitchbend.
-                int positionMs = step * 5; // 92 pitch steps in a beat of 480 ms.
-                double realPitch = pitchbends.get(step).apply(positionMs); // In tenths.
-                if (!pitchbends.get(step).getPortamento().isPresent()) {
-                    realPitch += defaultPitch; // Vibrato modifies default pitch if no portamento.
-                }
-                int diff = (int) ((realPitch - noteNumPitch) * 10); // In cents.
-                result += convertTo12Bit(diff);
-
-                // Set the default pitch to the one at the end of current portamento.
-                Optional<Portamento> portamento = pitchbends.get(step).getPortamento();
-                if (portamento.isPresent()) {
-                    defaultPitch = portamento.get().getEndPitch();
-                }
-            } else {
-                // Write a stretch of no pitchbends.
-                int numEmpty = 0;
-                int emptyStep = step;
-                for (; emptyStep <= lastStep; emptyStep++) {
-                    if (pitchbends.containsKey(emptyStep)) {
-                        break;
+            for (int i = 0; i < stepPortamentos.length; i++) {
+                int portamento = stepPortamentos[i];
+                int vibrato = stepVibratos[i];
+                isBent[i] = portamento >= 0 || vibrato >= 0;
+                if (isBent[i]) {
+                    double realPitch; // In tenths.
+                    if (portamento >= 0) {
+                        // Portamento pitch is absolute.
+                        realPitch = portamentoPitches[i];
                     } else {
-                        numEmpty++;
+                        // Vibrato modifies default pitch if no portamento.
+                        realPitch = defaultPitch;
+                    }
+                    if (vibrato >= 0) {
+                        // Vibrato pitch is centered on zero, meant to modify portamento pitch.
+                        realPitch += vibratoPitches[i];
                     }
+                    pitches[i] = realPitch;
+
+                    // Set the default pitch to the one at the end of current portamento.
+                    if (portamento >= 0) {
+                        defaultPitch = portamentos.get(portamento).getEndPitch();
+                    }
+                } else {
+                    pitches[i] = defaultPitch;
                 }
-                int diff = (int) ((defaultPitch - noteNumPitch) * 10); // In cents.
-                result += convertTo12Bit(diff);
-                if (numEmpty > 1) {
-                    result += String.format("#%d#", numEmpty - 1);
+                int overrideIndex = firstStep + i - overrideFirstStep;
+                if (overrideIndex >= 0 && overrideIndex < overrideCents.length
+                        && !Float.isNaN(overrideCents[overrideIndex])) {
+                    pitches[i] = overrideCents[overrideIndex] / 10.0; // Cents to tenths.
+                    isBent[i] = true;
                 }
-                step = emptyStep - 1; // Move step to the end of the empty stretch.
             }
         }
-        return result;
     }
 
-    /**
-     * For some reason, resamplers want two characters that represent a 12-bit number in two's
-     * complement form (-2048 to 2047). I would not be using this format if existing resamplers
-     * didn't require it.
-     * 
-     * @return A string of length 2 representing a 12-bit number.
-     */
-    private static String convertTo12Bit(int convertMe) {
-        // Convert out of two's complement form.
-        if (convertMe < 0) {
-            convertMe += 4096;
-        }
-        // Make sure convertMe is between 0 and 4095.
-        convertMe = Math.max(0, Math.min(4095, convertMe));
-        String result = ""; // Set to 0 by default.
-        for (int sixBitNumber : ImmutableList.of(convertMe / 64, convertMe % 64)) {
-            if (sixBitNumber >= 0 && sixBitNumber < 26) {
-                result += (char) (sixBitNumber + 'A');
-            } else if (sixBitNumber >= 26 && sixBitNumber < 52) {
-                result += (char) (sixBitNumber - 26 + 'a');
-            } else if (sixBitNumber >= 52 && sixBitNumber < 62) {
-                result += (char) (sixBitNumber - 52 + '0');
-            } else if (sixBitNumber == 62) {
-                result += '+';
-            } else if (sixBitNumber == 63) {
-                result += '/';
-            } else {
-                // Return 0 if the number is not in range [0, 64).
-                return "AA";
-            }
-        }
-        if (result.length() != 2) {
-            return "AA";
-        }
-        return result;
+    // Fills in pitches for each run of steps that share a segment. Steps without one are skipped.
+    private static <T extends PitchMutation> void applyRuns(
+            PitchSegments<T> segments,
+            int[] stepSegments,
+            int firstStep,
+            int stepMs,
+            double[] out) {
+        int runStart = 0;
+        for (int i = 1; i <= stepSegments.length; i++) {
+            if (i < stepSegments.length && stepSegments[i] == stepSegments[runStart]) {
+                continue;
+            }
+            if (stepSegments[runStart] >= 0) {
+                segments.get(stepSegments[runStart]).applyRange(
+                        (firstStep + runStart) * stepMs,
+                        stepMs,
+                        out,
+                        runStart,
+                        i - runStart);
+            }
+            runStart = i;
+        }
+    }
+
+    // Drops the latest snapshot, along with rendered pitch strings that include any changed step.
+    private void forgetRenders(RangeSet<Integer> changedSteps) {
+        if (changedSteps.isEmpty()) {
+            return;
+        }
+        latestSnapshot = null;
+        synchronized (renderedNotes) {
+            version++;
+            Iterator<RenderedRange> rendered = renderedNotes.keySet().iterator();
+            while (rendered.hasNext()) {
+                if (changedSteps.intersects(rendered.next().steps)) {
+                    rendered.remove();
+                }
+            }
+        }
+    }
+
+    private static void addSteps(RangeSet<Integer> steps, int firstStep, int lastStep) {
+        if (lastStep >= firstStep) {
+            steps.add(Range.closed(firstStep, lastStep));
+        }
     }
 
     // Finds the pitch step just after this position.
-    private static int nextPitchStep(double positionMs) {
-        return ((int) Math.ceil(positionMs / 5.0));
+    private int nextPitchStep(double positionMs) {
+        return ((int) Math.ceil(positionMs / stepMs));
     }
 
     // Returns the pitch step just before this position.
-    private static int prevPitchStep(double positionMs) {
-        int prevStep = ((int) Math.floor(positionMs / 5.0));
+    private int prevPitchStep(double positionMs) {
+        int prevStep = ((int) Math.floor(positionMs / stepMs));
         if (prevStep == nextPitchStep(positionMs)) {
             // Do not let prevPitchStep and nextPitchStep return the same value.
             return prevStep - 1;
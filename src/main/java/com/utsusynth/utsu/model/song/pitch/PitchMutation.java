@@ -3,4 +3,19 @@ package com.utsusynth.utsu.model.song.pitch;
 public interface PitchMutation {
 	/** Returns pitch value (in 1/10 of a semitone) for this position. */
 	double apply(int positionMs);
+
+	/**
+	 * Writes pitch values (in 1/10 of a semitone) for evenly spaced positions into an array, the
+	 * same as calling apply for each of them. Override to evaluate whole ranges more cheaply.
+	 *
+	 * @param firstMs Position of the first value.
+	 * @param stepMs Distance between positions.
+	 * @param out Where values go, starting at offset.
+	 * @param length Number of values to write.
+	 */
+	default void applyRange(int firstMs, int stepMs, double[] out, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			out[offset + i] = apply(firstMs + i * stepMs);
+		}
+	}
 }
@@ -0,0 +1,186 @@
+package com.utsusynth.utsu.model.song.pitch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+
+/**
+ * Pitch mutations that each cover a range of pitch steps. Every mutation is stored once, with its
+ * range and the note it belongs to kept in parallel arrays.
+ *
+ * <p>
+ * Overlaps are resolved ahead of time into sorted, non-overlapping runs of steps that each use a
+ * single segment, so finding the segment for any step is a binary search.
+ */
+class PitchSegments<T extends PitchMutation> {
+    private int[] firstSteps = new int[16];
+    private int[] lastSteps = new int[16];
+    private int[] notes = new int[16]; // Start of the note each segment belongs to, in ms.
+    private Object[] mutations = new Object[16];
+    private int size = 0;
+
+    // Resolved runs, rebuilt on the first lookup after segments change.
+    private int[] runFirstSteps = new int[0];
+    private int[] runLastSteps = new int[0];
+    private int[] runSegments = new int[0];
+    private int numRuns = 0;
+    private boolean runsOutdated = false;
+
+    /** Adds a mutation covering every step from firstStep to lastStep, inclusive. */
+    void add(int noteStartMs, int firstStep, int lastStep, T mutation) {
+        if (lastStep < firstStep) {
+            return;
+        }
+        if (size == notes.length) {
+            int newLength = Math.max(16, size * 2);
+            firstSteps = Arrays.copyOf(firstSteps, newLength);
+            lastSteps = Arrays.copyOf(lastSteps, newLength);
+            notes = Arrays.copyOf(notes, newLength);
+            mutations = Arrays.copyOf(mutations, newLength);
+        }
+        firstSteps[size] = firstStep;
+        lastSteps[size] = lastStep;
+        notes[size] = noteStartMs;
+        mutations[size] = mutation;
+        size++;
+        runsOutdated = true;
+    }
+
+    /**
+     * Removes every segment belonging to any of these notes, in a single pass over the segments.
+     *
+     * @param removedSteps The steps that the removed segments covered are added to this.
+     */
+    void removeNotes(Set<Integer> noteStartTimes, RangeSet<Integer> removedSteps) {
+        if (noteStartTimes.isEmpty()) {
+            return;
+        }
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (noteStartTimes.contains(notes[i])) {
+                removedSteps.add(Range.closed(firstSteps[i], lastSteps[i]));
+                continue;
+            }
+            firstSteps[newSize] = firstSteps[i];
+            lastSteps[newSize] = lastSteps[i];
+            notes[newSize] = notes[i];
+            mutations[newSize] = mutations[i];
+            newSize++;
+        }
+        Arrays.fill(mutations, newSize, size, null);
+        if (newSize != size) {
+            size = newSize;
+            runsOutdated = true;
+        }
+    }
+
+    /**
+     * Copies these segments along with their resolved runs. Lookups on the copy never write to
+     * it, so it can be shared between threads as long as nothing is added to or removed from it.
+     */
+    PitchSegments<T> copy() {
+        if (runsOutdated) {
+            resolveRuns();
+        }
+        PitchSegments<T> copy = new PitchSegments<>();
+        copy.firstSteps = Arrays.copyOf(firstSteps, size);
+        copy.lastSteps = Arrays.copyOf(lastSteps, size);
+        copy.notes = Arrays.copyOf(notes, size);
+        copy.mutations = Arrays.copyOf(mutations, size);
+        copy.size = size;
+        copy.runFirstSteps = Arrays.copyOf(runFirstSteps, numRuns);
+        copy.runLastSteps = Arrays.copyOf(runLastSteps, numRuns);
+        copy.runSegments = Arrays.copyOf(runSegments, numRuns);
+        copy.numRuns = numRuns;
+        return copy;
+    }
+
+    /**
+     * Finds which segment applies to each step of a range. Where segments overlap, the one from
+     * the latest note wins.
+     *
+     * @param out Set to the index of a segment for each step, or -1 if no segment covers it.
+     */
+    void resolve(int firstStep, int lastStep, int[] out) {
+        if (runsOutdated) {
+            resolveRuns();
+        }
+        Arrays.fill(out, 0, lastStep - firstStep + 1, -1);
+        // Find the first run that ends at or after the first step.
+        int low = 0;
+        int high = numRuns;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runLastSteps[mid] < firstStep) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int run = low; run < numRuns && runFirstSteps[run] <= lastStep; run++) {
+            int start = Math.max(runFirstSteps[run], firstStep);
+            int end = Math.min(runLastSteps[run], lastStep);
+            Arrays.fill(out, start - firstStep, end - firstStep + 1, runSegments[run]);
+        }
+    }
+
+    // Sweeps through segments in order of their first step, keeping track of which overlapping
+    // segment wins at each point where a segment starts or ends.
+    private void resolveRuns() {
+        Integer[] byFirstStep = new Integer[size];
+        int[] boundaries = new int[size * 2];
+        for (int i = 0; i < size; i++) {
+            byFirstStep[i] = i;
+            boundaries[i * 2] = firstSteps[i];
+            boundaries[i * 2 + 1] = lastSteps[i] + 1;
+        }
+        Arrays.sort(byFirstStep, Comparator.comparingInt(i -> firstSteps[i]));
+        Arrays.sort(boundaries);
+
+        // Latest note first, then whichever segment was added first.
+        PriorityQueue<Integer> active = new PriorityQueue<>(
+                Math.max(1, size),
+                (a, b) -> notes[a] != notes[b] ? Integer.compare(notes[b], notes[a])
+                        : Integer.compare(a, b));
+        runFirstSteps = new int[size * 2];
+        runLastSteps = new int[size * 2];
+        runSegments = new int[size * 2];
+        numRuns = 0;
+        int nextSegment = 0;
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            int step = boundaries[i];
+            if (step == boundaries[i + 1]) {
+                continue;
+            }
+            while (nextSegment < size && firstSteps[byFirstStep[nextSegment]] <= step) {
+                active.add(byFirstStep[nextSegment++]);
+            }
+            while (!active.isEmpty() && lastSteps[active.peek()] < step) {
+                active.poll(); // Segments are removed once they reach the front.
+            }
+            if (active.isEmpty()) {
+                continue;
+            }
+            int winner = active.peek();
+            int lastStep = boundaries[i + 1] - 1;
+            if (numRuns > 0 && runSegments[numRuns - 1] == winner
+                    && runLastSteps[numRuns - 1] == step - 1) {
+                runLastSteps[numRuns - 1] = lastStep; // Extend the previous run.
+            } else {
+                runFirstSteps[numRuns] = step;
+                runLastSteps[numRuns] = lastStep;
+                runSegments[numRuns] = winner;
+                numRuns++;
+            }
+        }
+        runsOutdated = false;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        return (T) mutations[index];
+    }
+}
@@ -0,0 +1,52 @@
+package com.utsusynth.utsu.model.song.pitch;
+
+/**
+ * Writes pitch values in the format resamplers read: two base64 characters for each pitch step,
+ * with "#n#" meaning the previous value repeats n more times. Meant to be reused, so that encoding
+ * a note allocates nothing but the finished string.
+ */
+class PitchStringEncoder {
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // Both characters of every 12-bit value, so that each value is encoded by a single lookup.
+    private static final char[] ENCODED = new char[4096 * 2];
+    static {
+        for (int value = 0; value < 4096; value++) {
+            ENCODED[value * 2] = BASE64[value / 64];
+            ENCODED[value * 2 + 1] = BASE64[value % 64];
+        }
+    }
+
+    private final StringBuilder builder = new StringBuilder();
+
+    /** Clears anything written so far. */
+    void reset() {
+        builder.setLength(0);
+    }
+
+    /**
+     * For some reason, resamplers want two characters that represent a 12-bit number in two's
+     * complement form (-2048 to 2047). I would not be using this format if existing resamplers
+     * didn't require it.
+     */
+    void appendCents(int cents) {
+        // Convert out of two's complement form.
+        if (cents < 0) {
+            cents += 4096;
+        }
+        // Make sure value is between 0 and 4095.
+        int value = Math.max(0, Math.min(4095, cents));
+        builder.append(ENCODED, value * 2, 2);
+    }
+
+    /** Marks the last value written as repeating this many more times. */
+    void appendRepeats(int numRepeats) {
+        builder.append('#').append(numRepeats).append('#');
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
@@ -1,6 +1,9 @@
 package com.utsusynth.utsu.model.song.pitch;
 
 class Vibrato implements PitchMutation {
+    // How often ranges recompute the sine exactly, so rounding errors can't build up.
+    private static final int EXACT_SINE_INTERVAL = 64;
+
     private final double startMs; // Absolute start of vibrato in ms.
     private final double endMs; // Absolute end of vibrato in ms.
     private final double phaseIn; // Length in ms of phase in.
@@ -61,4 +64,59 @@ class Vibrato implements PitchMutation {
             return 0;
         }
     }
+
+    /**
+     * Evaluates a range without calling Math.sin at every position. The vibrato's angle grows by
+     * an amount that itself changes at a constant rate, so the sine is found by rotating a unit
+     * vector by one angle, and rotating that angle by another, at each step.
+     */
+    @Override
+    public void applyRange(int firstMs, int stepMs, double[] out, int offset, int length) {
+        double step = stepMs;
+        // Rotates the angle's change at every step.
+        double changeChangeAngle = 2 * freqSlope * step * step;
+        double cosChangeChange = Math.cos(changeChangeAngle);
+        double sinChangeChange = Math.sin(changeChangeAngle);
+        double cosAngle = 0;
+        double sinAngle = 0;
+        double cosChange = 0;
+        double sinChange = 0;
+        for (int i = 0; i < length; i++) {
+            int positionMs = firstMs + i * stepMs;
+            if (i % EXACT_SINE_INTERVAL == 0) {
+                double angle = getAngle(positionMs);
+                double change = getAngle(positionMs + step) - angle;
+                cosAngle = Math.cos(angle);
+                sinAngle = Math.sin(angle);
+                cosChange = Math.cos(change);
+                sinChange = Math.sin(change);
+            }
+
+            double scale; // How far the vibrato has phased in.
+            if (positionMs < startMs || positionMs >= endMs) {
+                scale = 0;
+            } else if (positionMs < startMs + phaseIn) {
+                scale = Math.abs(positionMs - startMs) / phaseIn;
+            } else if (positionMs < endMs - phaseOut) {
+                scale = 1;
+            } else {
+                scale = Math.abs(endMs - positionMs) / phaseOut;
+            }
+            out[offset + i] = scale == 0 ? 0 : (amplitude * sinAngle + pitchChange) * scale;
+
+            // Move on to the next step's angle.
+            double nextCos = cosAngle * cosChange - sinAngle * sinChange;
+            sinAngle = sinAngle * cosChange + cosAngle * sinChange;
+            cosAngle = nextCos;
+            double nextCosChange = cosChange * cosChangeChange - sinChange * sinChangeChange;
+            sinChange = sinChange * cosChangeChange + cosChange * sinChangeChange;
+            cosChange = nextCosChange;
+        }
+    }
+
+    // Angle passed to sine at a position, in radians.
+    private double getAngle(double positionMs) {
+        double frequency = startFreq + freqSlope * (positionMs - startMs);
+        return (positionMs - startMs) * frequency - phase;
+    }
 }
@@ -27,6 +27,18 @@ class LinearPortamento extends Portamento {
 		return slope * adjustedX + y1;
 	}
 
+	@Override
+	public void applyRange(int firstMs, int stepMs, double[] out, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			int positionMs = firstMs + i * stepMs;
+			if (positionMs < x1 || positionMs > x2) {
+				out[offset + i] = apply(positionMs);
+			} else {
+				out[offset + i] = slope * (positionMs - x1) + y1;
+			}
+		}
+	}
+
 	@Override
 	public double getStartPitch() {
 		return y1;
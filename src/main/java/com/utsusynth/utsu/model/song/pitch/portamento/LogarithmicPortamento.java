@@ -39,6 +39,22 @@ class LogarithmicPortamento extends Portamento {
 		return pitch;
 	}
 
+	@Override
+	public void applyRange(int firstMs, int stepMs, double[] out, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			int positionMs = firstMs + i * stepMs;
+			double adjustedX = positionMs - x1;
+			if (positionMs < x1 || positionMs > x2 || adjustedX == 0.0) {
+				out[offset + i] = apply(positionMs);
+				continue;
+			}
+			double pitch = (yStretch * Math.log(adjustedX * xStretch)) + constant + y1;
+			// Don't let pitch go beyond y1.
+			boolean beyondStart = (y2 > y1 && y1 > pitch) || (y1 > y2 && pitch > y1);
+			out[offset + i] = beyondStart ? y1 : pitch;
+		}
+	}
+
 	@Override
 	public double getStartPitch() {
 		return y1;
@@ -31,6 +31,20 @@ class LogisticPortamento extends Portamento {
 		return maxY / (1 + Math.exp(-1 * steepness * (adjustedX - halfX))) + y1;
 	}
 
+	@Override
+	public void applyRange(int firstMs, int stepMs, double[] out, int offset, int length) {
+		double negSteepness = -1 * steepness;
+		for (int i = 0; i < length; i++) {
+			int positionMs = firstMs + i * stepMs;
+			if (positionMs < x1 || positionMs > x2) {
+				out[offset + i] = apply(positionMs);
+			} else {
+				double adjustedX = positionMs - x1;
+				out[offset + i] = maxY / (1 + Math.exp(negSteepness * (adjustedX - halfX))) + y1;
+			}
+		}
+	}
+
 	@Override
 	public double getStartPitch() {
 		return y1;
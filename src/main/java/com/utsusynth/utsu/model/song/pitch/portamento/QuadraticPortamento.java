@@ -27,6 +27,19 @@ class QuadraticPortamento extends Portamento {
 		return slope * (adjustedX * adjustedX) + y1;
 	}
 
+	@Override
+	public void applyRange(int firstMs, int stepMs, double[] out, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			int positionMs = firstMs + i * stepMs;
+			if (positionMs < x1 || positionMs > x2) {
+				out[offset + i] = apply(positionMs);
+			} else {
+				double adjustedX = positionMs - x1;
+				out[offset + i] = slope * (adjustedX * adjustedX) + y1;
+			}
+		}
+	}
+
 	@Override
 	public double getStartPitch() {
 		return this.y1;
@@ -2,6 +2,8 @@ package com.utsusynth.utsu.view.song;
 
 import java.util.Collection;
 import java.util.TreeSet;
+import java.util.function.DoubleSupplier;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.utsusynth.utsu.common.RegionBounds;
@@ -10,9 +12,7 @@ import com.utsusynth.utsu.common.quantize.Scaler;
 import com.utsusynth.utsu.common.utils.PitchUtils;
 import com.utsusynth.utsu.common.utils.RoundUtils;
 import com.utsusynth.utsu.view.song.note.Note;
-import javafx.animation.Animation.Status;
-import javafx.animation.Interpolator;
-import javafx.animation.TranslateTransition;
+import javafx.animation.AnimationTimer;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -29,8 +29,9 @@ public class PlaybackBarManager {
     private final Scaler scaler;
     private final TreeSet<Note> highlighted;
     private final BooleanProperty isAnythingHighlighted;
-    private final TranslateTransition playback;
 
+    private Optional<AnimationTimer> playback = Optional.absent();
+    private Optional<Line> playBar = Optional.absent();
     private Line startBar;
     private Line endBar;
     private Group bars;
@@ -40,7 +41,6 @@ public class PlaybackBarManager {
         this.scaler = scaler;
         highlighted = new TreeSet<>();
         isAnythingHighlighted = new SimpleBooleanProperty(false);
-        playback = new TranslateTransition();
         clear();
     }
 
@@ -49,49 +49,67 @@ public class PlaybackBarManager {
     }
 
     /**
-     * Sends the playback bar across the part of the song that plays.
+     * Sends the playback bar across the part of the song that plays, following the actual
+     * playback position so the bar stays in sync with the audio.
      * 
+     * @param positionMs Playback position from the start of the region, in real time.
      * @return A double binding of the playback bar's current x-value.
      */
-    DoubleProperty startPlayback(Duration duration, RegionBounds playRegion) {
+    DoubleProperty startPlayback(
+            Duration duration,
+            RegionBounds playRegion,
+            DoubleSupplier positionMs) {
         if (duration != Duration.UNKNOWN && duration != Duration.INDEFINITE) {
+            stopPlayback();
+
             // Create a playback bar.
             double barX = scaler.scalePos(playRegion.getMinMs());
-            Line playBar = new Line(barX, 0, barX, scaler.scaleY(totalHeight));
-            playBar.getStyleClass().addAll("playback-bar");
-            bars.getChildren().add(playBar);
+            Line newBar = new Line(barX, 0, barX, scaler.scaleY(totalHeight));
+            newBar.getStyleClass().addAll("playback-bar");
+            bars.getChildren().add(newBar);
 
             // Move the playback bar as the song plays.
-            playback.stop();
-            playback.setNode(playBar);
-            playback.setDuration(duration);
-            playback.setToX(scaler.scaleX(playRegion.getMaxMs() - playRegion.getMinMs()));
-            playback.setInterpolator(Interpolator.LINEAR);
-            playback.statusProperty().addListener((obs, oldStatus, newStatus) -> {
-                if (newStatus == Status.STOPPED) {
-                    bars.getChildren().remove(playBar);
+            double widthX = scaler.scaleX(playRegion.getMaxMs() - playRegion.getMinMs());
+            double durationMs = duration.toMillis();
+            AnimationTimer timer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    double ratio =
+                            durationMs > 0 ? positionMs.getAsDouble() / durationMs : 1;
+                    newBar.setTranslateX(widthX * Math.max(0, Math.min(1, ratio)));
                 }
-            });
-            playback.play();
-            return playBar.translateXProperty();
+            };
+            playback = Optional.of(timer);
+            playBar = Optional.of(newBar);
+            timer.start();
+            return newBar.translateXProperty();
         }
         // Return null if no playback bar created.
         return null;
     }
 
     void pausePlayback() {
-        playback.pause(); // Does nothing if animation not playing.
+        if (playback.isPresent()) {
+            playback.get().stop(); // Bar stays where the audio paused.
+        }
     }
 
     void resumePlayback() {
-        if (playback.getStatus() == Status.PAUSED) {
-            playback.play(); // Does nothing if animation not paused.
+        if (playback.isPresent()) {
+            playback.get().start();
         }
     }
 
     // Removes the playback bar.
     void stopPlayback() {
-        playback.stop();
+        if (playback.isPresent()) {
+            playback.get().stop();
+            playback = Optional.absent();
+        }
+        if (playBar.isPresent()) {
+            bars.getChildren().remove(playBar.get());
+            playBar = Optional.absent();
+        }
     }
 
     /** Adds a specific note to highlighted set and adjust playback bars. */
@@ -162,7 +180,9 @@ public class PlaybackBarManager {
     }
 
     void clear() {
-        playback.stop(); // Stop any ongoing playback.
+        if (bars != null) {
+            stopPlayback(); // Stop any ongoing playback.
+        }
         bars = new Group();
         clearHighlights();
 
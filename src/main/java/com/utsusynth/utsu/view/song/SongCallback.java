@@ -11,11 +11,13 @@ import com.utsusynth.utsu.common.data.NoteUpdateData;
  * The view can use this interface to communicate with the model by way of the controller.
  */
 public interface SongCallback {
-    /** Add a one or more notes to the song. Input list must be in order. */
-    void addNotes(List<NoteData> toAdd);
-
-    /** Remove one or more notes from the song. */
-    MutateResponse removeNotes(Set<Integer> positions);
+    /**
+     * Removes some notes from the song and adds others, then standardizes every affected note at
+     * once. Notes to add must be in order.
+     *
+     * @return The notes that were standardized, as one response for each group of nearby changes.
+     */
+    List<MutateResponse> replaceNotes(Set<Integer> positionsToRemove, List<NoteData> toAdd);
 
     /** Modify a note without changing its position or duration. */
     NoteUpdateData modifyNote(NoteData toModify);
@@ -26,6 +28,24 @@ public interface SongCallback {
     /** Records an action so it can be undone or redone later. */
     void recordAction(Runnable redoAction, Runnable undoAction);
 
+    /**
+     * Records an action that holds on to several notes so it can be undone or redone later.
+     *
+     * @param numNotes How many notes the action keeps hold of, which decides roughly how much
+     *        memory it takes up.
+     */
+    void recordAction(Runnable redoAction, Runnable undoAction, int numNotes);
+
+    /**
+     * Records an action so it can be undone or redone later. If the previous action was recorded
+     * just before this one with the same key, both are undone and redone as one.
+     */
+    void recordMergeableAction(
+            Object mergeKey,
+            Runnable redoAction,
+            Runnable undoAction,
+            int numNotes);
+
     /** Open the note properties editor on the given RegionBounds. */
     void openNoteProperties(RegionBounds regionBounds);
 }
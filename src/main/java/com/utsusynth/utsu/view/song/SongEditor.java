@@ -4,6 +4,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.DoubleSupplier;
 import java.util.stream.Collectors;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
@@ -172,16 +173,30 @@ public class SongEditor {
         return selection;
     }
 
-    /** Start the playback bar animation. It will end on its own. */
-    public DoubleProperty startPlayback(RegionBounds rendered, Duration duration) {
+    /**
+     * Returns the part of the song that the playback bar crosses when a region is rendered, from
+     * the start of the first note's envelope to the end of the last note.
+     */
+    public RegionBounds getPlaybackRegion(RegionBounds rendered) {
         int firstPosition = noteMap.getFirstPosition(rendered);
         int lastPosition = noteMap.getLastPosition(rendered);
         if (noteMap.hasNote(firstPosition) && noteMap.hasNote(lastPosition)) {
             int firstNoteStart = noteMap.getEnvelope(firstPosition).getStartMs();
             int renderStart = Math.min(firstNoteStart, rendered.getMinMs());
             int renderEnd = lastPosition + noteMap.getNote(lastPosition).getDurationMs();
-            return playbackManager
-                    .startPlayback(duration, new RegionBounds(renderStart, renderEnd));
+            return new RegionBounds(renderStart, renderEnd);
+        }
+        return RegionBounds.INVALID;
+    }
+
+    /** Start the playback bar animation, which follows the given playback position. */
+    public DoubleProperty startPlayback(
+            RegionBounds rendered,
+            Duration duration,
+            DoubleSupplier positionMs) {
+        RegionBounds playbackRegion = getPlaybackRegion(rendered);
+        if (!playbackRegion.equals(RegionBounds.INVALID)) {
+            return playbackManager.startPlayback(duration, playbackRegion, positionMs);
         }
         return null;
     }
@@ -263,15 +278,14 @@ public class SongEditor {
         if (toAdd.isEmpty()) {
             return;
         }
-        model.addNotes(toAdd);
-        refreshNotes(toAdd.getFirst().getPosition(), toAdd.getLast().getPosition());
+        updateSong(ImmutableSet.of(), toAdd);
         model.recordAction(() -> {
             playbackManager.clearHighlights();
             undoDeleteNotes(newNotes);
         }, () -> {
             playbackManager.clearHighlights();
             deleteNotes(newNotes);
-        });
+        }, newNotes.size());
     }
 
     public void deleteSelected() {
@@ -283,17 +297,15 @@ public class SongEditor {
         }, () -> {
             playbackManager.clearHighlights();
             undoDeleteNotes(toDelete);
-        });
+        }, toDelete.size());
         playbackManager.clearHighlights();
     }
 
     private void deleteNotes(List<Note> notes) {
         Set<Integer> positionsToRemove = notes.stream().filter(curNote -> curNote.isValid())
                 .map(curNote -> curNote.getAbsPositionMs()).collect(Collectors.toSet());
-        RegionBounds toStandardize = removeNotes(positionsToRemove);
-        if (!toStandardize.equals(RegionBounds.INVALID)) {
-            refreshNotes(toStandardize.getMinMs(), toStandardize.getMaxMs());
-        }
+        removeFromNoteMap(positionsToRemove);
+        updateSong(positionsToRemove, ImmutableList.of());
         for (Note note : notes) {
             noteMap.removeNoteElement(note);
         }
@@ -312,43 +324,32 @@ public class SongEditor {
             }
             toAdd.add(note.getNoteData());
         }
-        if (toAdd.isEmpty()) {
-            return;
-        }
-        model.addNotes(toAdd);
-        refreshNotes(toAdd.getFirst().getPosition(), toAdd.getLast().getPosition());
+        updateSong(ImmutableSet.of(), toAdd);
     }
 
-    /**
-     * Removes notes from the backend song, returns RegionBounds of notes that need refreshing.
-     */
-    private RegionBounds removeNotes(Set<Integer> positionsToRemove) {
-        if (positionsToRemove.isEmpty()) {
-            return RegionBounds.INVALID; // If no valid song notes to remove, do nothing.
-        }
-        MutateResponse response = model.removeNotes(positionsToRemove);
-        // Removd all deleted notes from note map.
-        for (NoteUpdateData updateData : response.getNotes()) {
+    /** Removes notes from the note map, without removing them from the screen. */
+    private void removeFromNoteMap(Set<Integer> positionsToRemove) {
+        for (int position : positionsToRemove) {
             // Should never happen but let's check just in case.
-            if (noteMap.hasNote(updateData.getPosition())) {
-                noteMap.removeFullNote(updateData.getPosition());
+            if (noteMap.hasNote(position)) {
+                noteMap.removeFullNote(position);
             } else {
                 System.out.println("Error: Note present in backend but not in frontend!");
             }
         }
+    }
 
-        if (response.getPrev().isPresent() && response.getNext().isPresent()) {
-            return new RegionBounds(
-                    response.getPrev().get().getPosition(),
-                    response.getNext().get().getPosition());
-        } else if (response.getPrev().isPresent()) {
-            int prevPosition = response.getPrev().get().getPosition();
-            return new RegionBounds(prevPosition, prevPosition);
-        } else if (response.getNext().isPresent()) {
-            int nextPosition = response.getNext().get().getPosition();
-            return new RegionBounds(nextPosition, nextPosition);
+    /**
+     * Removes and adds notes in the backend song all at once, then refreshes every note that the
+     * song standardized as a result.
+     */
+    private void updateSong(Set<Integer> positionsToRemove, List<NoteData> toAdd) {
+        if (positionsToRemove.isEmpty() && toAdd.isEmpty()) {
+            return; // If no valid song notes to change, do nothing.
+        }
+        for (MutateResponse response : model.replaceNotes(positionsToRemove, toAdd)) {
+            refreshNotes(response);
         }
-        return RegionBounds.INVALID;
     }
 
     public void refreshSelected() {
@@ -362,7 +363,11 @@ public class SongEditor {
     }
 
     private void refreshNotes(int firstPosition, int lastPosition) {
-        MutateResponse standardizeResponse = model.standardizeNotes(firstPosition, lastPosition);
+        refreshNotes(model.standardizeNotes(firstPosition, lastPosition));
+    }
+
+    // Updates notes on screen to match the notes the backend song standardized.
+    private void refreshNotes(MutateResponse standardizeResponse) {
         String prevPitch = "";
         Note prevNote = null;
         if (standardizeResponse.getPrev().isPresent()) {
@@ -427,7 +432,7 @@ public class SongEditor {
     private void moveNotes(List<Note> notes, int positionDelta, int rowDelta) {
         Set<Integer> positionsToRemove = notes.stream().filter(curNote -> curNote.isValid())
                 .map(curNote -> curNote.getAbsPositionMs()).collect(Collectors.toSet());
-        RegionBounds toStandardize = removeNotes(positionsToRemove);
+        removeFromNoteMap(positionsToRemove);
 
         LinkedList<NoteData> toAdd = new LinkedList<>();
         for (Note curNote : notes) {
@@ -441,18 +446,7 @@ public class SongEditor {
             }
             toAdd.add(curNote.getNoteData());
         }
-        // Standardize and return early if nothing needs to be added.
-        if (toAdd.isEmpty()) {
-            if (!toStandardize.equals(RegionBounds.INVALID)) {
-                refreshNotes(toStandardize.getMinMs(), toStandardize.getMaxMs());
-            }
-            return;
-        }
-        model.addNotes(toAdd);
-        RegionBounds addRegion =
-                new RegionBounds(toAdd.getFirst().getPosition(), toAdd.getLast().getPosition());
-        toStandardize = toStandardize.mergeWith(addRegion);
-        refreshNotes(toStandardize.getMinMs(), toStandardize.getMaxMs());
+        updateSong(positionsToRemove, toAdd);
     }
 
     public Optional<Integer> getFocusNote() {
@@ -723,20 +717,21 @@ public class SongEditor {
         @Override
         public void updateNote(Note note) {
             int positionMs = note.getAbsPositionMs();
-            if (note.isValid()) {
-                // Removes note if necessary.
-                removeNotes(ImmutableSet.of(positionMs));
-            }
+            // Removes note if necessary.
+            Set<Integer> toRemove =
+                    note.isValid() ? ImmutableSet.of(positionMs) : ImmutableSet.of();
+            removeFromNoteMap(toRemove);
+            List<NoteData> toAdd = ImmutableList.of();
             try {
                 // Replaces note if possible.
                 noteMap.putNote(positionMs, note);
                 note.setValid(true);
-                model.addNotes(ImmutableList.of(note.getNoteData()));
+                toAdd = ImmutableList.of(note.getNoteData());
             } catch (NoteAlreadyExistsException e) {
                 note.setValid(false);
             }
             // Refreshes notes regardless of whether a new one was placed.
-            refreshNotes(positionMs, positionMs);
+            updateSong(toRemove, toAdd);
         }
 
         @Override
@@ -753,13 +748,14 @@ public class SongEditor {
             List<Note> toMove =
                     playbackManager.isHighlighted(note) ? playbackManager.getHighlightedNotes()
                             : ImmutableList.of(note);
-            model.recordAction(() -> {
+            // Dragging the same notes again is undone along with this.
+            model.recordMergeableAction(ImmutableSet.copyOf(toMove), () -> {
                 playbackManager.clearHighlights();
                 moveNotes(toMove, positionDelta, rowDelta);
             }, () -> {
                 playbackManager.clearHighlights();
                 moveNotes(toMove, -positionDelta, -rowDelta);
-            });
+            }, toMove.size());
         }
 
         @Override
@@ -784,7 +780,7 @@ public class SongEditor {
             }, () -> {
                 playbackManager.clearHighlights();
                 undoDeleteNotes(toDelete);
-            });
+            }, toDelete.size());
             if (playbackManager.isHighlighted(note)) {
                 playbackManager.clearHighlights();
             }
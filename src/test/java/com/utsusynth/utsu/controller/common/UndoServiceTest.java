@@ -0,0 +1,66 @@
+package com.utsusynth.utsu.controller.common;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for the {@link UndoService}. */
+public class UndoServiceTest {
+    private final List<String> log = new ArrayList<>();
+
+    @Test
+    public void forgetsOldestActionsOverMemoryBudget() {
+        UndoService undoService = new UndoService(300);
+        undoService.setMostRecentAction(() -> log.add("redo 1"), () -> log.add("undo 1"), 100);
+        undoService.setMostRecentAction(() -> log.add("redo 2"), () -> log.add("undo 2"), 100);
+        undoService.setMostRecentAction(() -> log.add("redo 3"), () -> log.add("undo 3"), 150);
+        assertThat(undoService.footprintProperty().get()).isEqualTo(250);
+
+        undoService.undo();
+        undoService.undo();
+        undoService.undo(); // Nothing left to undo.
+        assertThat(log).containsExactly("undo 3", "undo 2").inOrder();
+        assertThat(undoService.canUndoProperty().get()).isFalse();
+        assertThat(undoService.footprintProperty().get()).isEqualTo(250);
+
+        // Recording a new action forgets the undone ones.
+        undoService.setMostRecentAction(() -> log.add("redo 4"), () -> log.add("undo 4"), 500);
+        assertThat(undoService.footprintProperty().get()).isEqualTo(500);
+        assertThat(undoService.canRedoProperty().get()).isFalse();
+        assertThat(undoService.canUndoProperty().get()).isTrue();
+    }
+
+    @Test
+    public void mergesConsecutiveActionsWithTheSameKey() {
+        UndoService undoService = new UndoService(1000);
+        merge(undoService, "a", 1);
+        merge(undoService, "a", 2);
+        merge(undoService, "b", 3);
+        assertThat(undoService.footprintProperty().get()).isEqualTo(30);
+
+        undoService.undo();
+        undoService.undo();
+        assertThat(undoService.canUndoProperty().get()).isFalse();
+        undoService.redo();
+        assertThat(log)
+                .containsExactly("undo 3", "undo 2", "undo 1", "redo 1", "redo 2")
+                .inOrder();
+
+        // Actions are not merged into one that was redone.
+        merge(undoService, "a", 4);
+        undoService.undo();
+        assertThat(log.get(log.size() - 1)).isEqualTo("undo 4");
+        assertThat(undoService.canUndoProperty().get()).isTrue();
+    }
+
+    // Records an action that takes up 10 bytes.
+    private void merge(UndoService undoService, String mergeKey, int action) {
+        undoService.mergeMostRecentAction(
+                mergeKey,
+                () -> log.add("redo " + action),
+                () -> log.add("undo " + action),
+                10);
+    }
+}
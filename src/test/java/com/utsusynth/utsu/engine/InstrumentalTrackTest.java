@@ -0,0 +1,61 @@
+package com.utsusynth.utsu.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for the {@link InstrumentalTrack}. */
+public class InstrumentalTrackTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readsStereoFromAnyPosition() throws IOException {
+        // Left channel counts up from 1, right channel counts down from -1.
+        short[] input = new short[2000];
+        for (int frame = 0; frame < 1000; frame++) {
+            input[frame * 2] = (short) (frame + 1);
+            input[frame * 2 + 1] = (short) -(frame + 1);
+        }
+        InstrumentalTrack track = InstrumentalTrack.load(writeStereoWav(input, 1000)).get();
+        assertThat(track.getSampleRate()).isEqualTo(1000);
+        assertThat(track.getNumChannels()).isEqualTo(2);
+
+        short[] buffer = new short[4];
+        InstrumentalTrack later = track.startingAt(100);
+        assertThat(later.getNumFrames()).isEqualTo(900);
+        assertThat(later.read(0, buffer)).isEqualTo(2);
+        assertThat(buffer).isEqualTo(new short[] {101, -101, 102, -102});
+
+        // Starting before the instrumental pads it with silence.
+        InstrumentalTrack earlier = track.startingAt(-1);
+        assertThat(earlier.read(0, buffer)).isEqualTo(2);
+        assertThat(buffer).isEqualTo(new short[] {0, 0, 1, -1});
+        assertThat(earlier.read(1000, buffer)).isEqualTo(1);
+    }
+
+    private File writeStereoWav(short[] samples, int sampleRate) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2);
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        AudioFormat format = new AudioFormat(sampleRate, 16, 2, true, false);
+        AudioInputStream stream = new AudioInputStream(
+                new ByteArrayInputStream(bytes.array()),
+                format,
+                samples.length / 2);
+        File wavFile = tempFolder.newFile("instrumental.wav");
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, wavFile);
+        return wavFile;
+    }
+}
@@ -0,0 +1,65 @@
+package com.utsusynth.utsu.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.utsusynth.utsu.files.SoundFileReader;
+import com.utsusynth.utsu.model.song.Note;
+
+/** Tests for the {@link JavaWavtool}. */
+public class JavaWavtoolTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void appliesStartPointAndEnvelope() throws IOException {
+        // Input is silent for the first 10 ms, then constant.
+        short[] input = new short[samples(200)];
+        for (int i = samples(10); i < input.length; i++) {
+            input[i] = 1000;
+        }
+        Note note = new Note();
+        note.setStartPoint(10);
+        // Fade in over 20 ms, hold at full volume, fade out over the last 20 ms.
+        note.setEnvelope(
+                new String[] {"20", "0", "0", "100", "100", "100", "100", "0", "20", "0", "100"});
+
+        JavaWavtool wavtool = new JavaWavtool(new SoundFileReader());
+        short[] output = wavtool.renderNote(null, 125, note, 100, writeWav(input));
+
+        assertThat(output.length).isEqualTo(samples(100));
+        assertThat(output[0]).isEqualTo((short) 0);
+        assertThat(output[samples(10)]).isEqualTo((short) 500);
+        assertThat(output[samples(50)]).isEqualTo((short) 1000);
+        assertThat(output[samples(90)]).isEqualTo((short) 500);
+    }
+
+    private static int samples(double ms) {
+        return (int) Math.round(ms * MixBuffer.SAMPLE_RATE / 1000);
+    }
+
+    private File writeWav(short[] samples) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2);
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        AudioFormat format = new AudioFormat(MixBuffer.SAMPLE_RATE, 16, 1, true, false);
+        AudioInputStream stream = new AudioInputStream(
+                new ByteArrayInputStream(bytes.array()),
+                format,
+                samples.length);
+        File wavFile = tempFolder.newFile("input.wav");
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, wavFile);
+        return wavFile;
+    }
+}
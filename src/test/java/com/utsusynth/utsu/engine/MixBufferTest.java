@@ -0,0 +1,157 @@
+package com.utsusynth.utsu.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+/** Tests for the {@link MixBuffer}. */
+public class MixBufferTest {
+    // One millisecond of audio.
+    private static final int MS = MixBuffer.SAMPLE_RATE / 1000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void mixesOverlappingNotes() throws IOException {
+        MixBuffer mix = new MixBuffer();
+        update(
+                mix,
+                ImmutableList.of(
+                        new MixBuffer.Entry("a", 0, 10),
+                        new MixBuffer.Entry("b", 5, 10)),
+                15,
+                ImmutableMap.of("a", constant(10 * MS, 100), "b", constant(10 * MS, 20)));
+        File output = tempFolder.newFile("mix.wav");
+        mix.writeTo(output);
+
+        short[] samples = readSamples(output);
+        assertThat(samples.length).isEqualTo((int) Math.round(15 * MixBuffer.SAMPLE_RATE / 1000.0));
+        assertThat(samples[0]).isEqualTo((short) 100);
+        assertThat(samples[7 * MS]).isEqualTo((short) 120);
+        assertThat(samples[12 * MS]).isEqualTo((short) 20);
+    }
+
+    @Test
+    public void onlyRemixesChangedSegments() throws IOException {
+        MixBuffer mix = new MixBuffer();
+        assertThat(
+                update(
+                        mix,
+                        ImmutableList.of(
+                                new MixBuffer.Entry("a", 0, 10),
+                                new MixBuffer.Entry("b", 10, 10),
+                                new MixBuffer.Entry("c", 20, 10)),
+                        30,
+                        ImmutableMap.of(
+                                "a",
+                                constant(10 * MS, 1),
+                                "b",
+                                constant(10 * MS, 2),
+                                "c",
+                                constant(10 * MS, 3)))).isEqualTo(3);
+        File output = tempFolder.newFile("mix.wav");
+        mix.writeTo(output);
+        assertThat(mix.hasSamples("b")).isTrue();
+
+        // Replacing the last note should leave the first two segments alone.
+        assertThat(
+                update(
+                        mix,
+                        ImmutableList.of(
+                                new MixBuffer.Entry("a", 0, 10),
+                                new MixBuffer.Entry("b", 10, 10),
+                                new MixBuffer.Entry("d", 20, 10)),
+                        30,
+                        ImmutableMap.of("d", constant(10 * MS, 4)))).isEqualTo(1);
+        assertThat(mix.hasSamples("c")).isFalse();
+        mix.writeTo(output);
+
+        short[] samples = readSamples(output);
+        assertThat(samples[5 * MS]).isEqualTo((short) 1);
+        assertThat(samples[15 * MS]).isEqualTo((short) 2);
+        assertThat(samples[25 * MS]).isEqualTo((short) 4);
+    }
+
+    @Test
+    public void mixesLeadingNotesBeforeLaterOnesFinish() {
+        MixBuffer mix = new MixBuffer();
+        mix.prepare(
+                ImmutableList.of(
+                        new MixBuffer.Entry("a", 0, 10),
+                        new MixBuffer.Entry("b", 10, 10),
+                        new MixBuffer.Entry("c", 20, 10)),
+                30,
+                false);
+        int generation = mix.getGeneration();
+        assertThat(mix.mixAvailable()).isEqualTo(0);
+
+        // Only the first note is needed to read up to the start of the second.
+        mix.addSamples("a", constant(10 * MS, 1));
+        assertThat(mix.mixAvailable()).isEqualTo(mix.read(generation, 0, new short[30 * MS]));
+        mix.addSamples("c", constant(10 * MS, 3));
+        assertThat(mix.mixAvailable()).isLessThan(20 * MS);
+        mix.addSamples("b", constant(10 * MS, 2));
+        assertThat(mix.mixAvailable()).isEqualTo(mix.getTotalSamples());
+
+        short[] buffer = new short[10 * MS];
+        assertThat(mix.read(generation, 15 * MS, buffer)).isEqualTo(buffer.length);
+        assertThat(buffer[0]).isEqualTo((short) 2);
+        assertThat(buffer[buffer.length - 1]).isEqualTo((short) 3);
+
+        // An updated layout of the same audio can still be read.
+        mix.prepare(
+                ImmutableList.of(
+                        new MixBuffer.Entry("a", 0, 10),
+                        new MixBuffer.Entry("b", 10, 10)),
+                20,
+                true);
+        mix.mixAvailable();
+        assertThat(mix.read(generation, 0, buffer)).isEqualTo(buffer.length);
+
+        // Readers of an old layout are told to stop.
+        mix.prepare(ImmutableList.of(new MixBuffer.Entry("a", 0, 10)), 10, false);
+        assertThat(mix.read(generation, 0, buffer)).isEqualTo(-1);
+    }
+
+    // Lays out a new mix and adds the audio for its notes, the way the engine does.
+    private static int update(
+            MixBuffer mix,
+            List<MixBuffer.Entry> entries,
+            double totalMs,
+            Map<String, short[]> samples) {
+        int numRemixed = mix.prepare(entries, totalMs, false);
+        for (Map.Entry<String, short[]> note : samples.entrySet()) {
+            mix.addSamples(note.getKey(), note.getValue());
+        }
+        mix.mixAvailable();
+        return numRemixed;
+    }
+
+    private static short[] constant(int numSamples, int value) {
+        short[] samples = new short[numSamples];
+        Arrays.fill(samples, (short) value);
+        return samples;
+    }
+
+    private static short[] readSamples(File wavFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.toByteArray(wavFile));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(44);
+        short[] samples = new short[buffer.remaining() / 2];
+        buffer.asShortBuffer().get(samples);
+        return samples;
+    }
+}
@@ -0,0 +1,85 @@
+package com.utsusynth.utsu.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.google.common.io.Files;
+
+/** Tests for the {@link RenderCache}. */
+public class RenderCacheTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void putThenGet() throws IOException {
+        RenderCache cache = new RenderCache(tempFolder.newFolder("cache"), 100);
+        assertThat(cache.get("a").isPresent()).isFalse();
+
+        File cached = cache.put("a", makeRender(10));
+        assertThat(cache.get("a").get()).isEqualTo(cached);
+        assertThat(cache.getSizeBytes()).isEqualTo(10);
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsed() throws IOException {
+        RenderCache cache = new RenderCache(tempFolder.newFolder("cache"), 25);
+        for (String key : new String[] {"a", "b", "c"}) {
+            cache.put(key, makeRender(10));
+            cache.release(key);
+        }
+        cache.get("a"); // "b" is now the least recently used entry.
+        cache.release("a");
+
+        cache.trim();
+        assertThat(cache.get("a").isPresent()).isTrue();
+        assertThat(cache.get("b").isPresent()).isFalse();
+        assertThat(cache.get("c").isPresent()).isTrue();
+        assertThat(cache.getSizeBytes()).isEqualTo(20);
+    }
+
+    @Test
+    public void trimKeepsRendersThatAreStillBeingRead() throws IOException {
+        RenderCache cache = new RenderCache(tempFolder.newFolder("cache"), 15);
+        File first = cache.put("a", makeRender(10));
+        cache.release("a");
+
+        // Two renders read "a" at once, and a third renders "b".
+        cache.get("a");
+        cache.get("a");
+        File second = cache.put("b", makeRender(10));
+        cache.trim();
+        assertThat(first.exists()).isTrue();
+        assertThat(second.exists()).isTrue();
+
+        // Once one render is done with "a", the other can still read it.
+        cache.release("a");
+        cache.trim();
+        assertThat(first.exists()).isTrue();
+
+        cache.release("a");
+        cache.trim();
+        assertThat(first.exists()).isFalse();
+        assertThat(second.exists()).isTrue();
+        assertThat(cache.getSizeBytes()).isEqualTo(10);
+    }
+
+    @Test
+    public void reloadsExistingEntries() throws IOException {
+        File cacheDir = tempFolder.newFolder("cache");
+        new RenderCache(cacheDir, 100).put("a", makeRender(10));
+
+        RenderCache reloaded = new RenderCache(cacheDir, 100);
+        assertThat(reloaded.get("a").isPresent()).isTrue();
+        assertThat(reloaded.getSizeBytes()).isEqualTo(10);
+    }
+
+    private File makeRender(int numBytes) throws IOException {
+        File render = tempFolder.newFile();
+        Files.write(new byte[numBytes], render);
+        return render;
+    }
+}
@@ -0,0 +1,64 @@
+package com.utsusynth.utsu.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import com.google.common.collect.ImmutableList;
+
+/** Tests for the {@link RenderScheduler}. */
+public class RenderSchedulerTest {
+    @Test
+    public void cancelsQueuedAndRunningTasks() throws Exception {
+        RenderScheduler scheduler = new RenderScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        RenderScheduler.Job job = scheduler.newJob(0, RenderScheduler.Priority.FOREGROUND);
+        Future<Boolean> running = job.submit(() -> {
+            started.countDown();
+            Thread.sleep(10000);
+            return true;
+        }, 0);
+        Future<Boolean> queued = job.submit(() -> true, 0);
+        started.await();
+        assertThat(scheduler.getQueueDepth()).isEqualTo(1);
+
+        job.cancel();
+        assertThat(running.isCancelled()).isTrue();
+        assertThat(queued.isCancelled()).isTrue();
+        assertThat(scheduler.getQueueDepth()).isEqualTo(0);
+
+        // The same threads keep working for later jobs.
+        RenderScheduler.Job nextJob = scheduler.newJob(0, RenderScheduler.Priority.FOREGROUND);
+        assertThat(nextJob.submit(() -> true, 0).get()).isTrue();
+    }
+
+    @Test
+    public void runsUrgentTasksFirst() throws Exception {
+        RenderScheduler scheduler = new RenderScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        RenderScheduler.Job background =
+                scheduler.newJob(0, RenderScheduler.Priority.BACKGROUND);
+        RenderScheduler.Job foreground =
+                scheduler.newJob(0, RenderScheduler.Priority.FOREGROUND);
+        background.submit(() -> {
+            release.await();
+            return true;
+        }, 0);
+        background.submit(() -> order.add("background"), 0);
+        Future<Boolean> adopted = background.submit(() -> order.add("adopted"), 500);
+        foreground.adopt(adopted, 100);
+        Future<Boolean> last = foreground.submit(() -> order.add("later"), 300);
+        foreground.submit(() -> order.add("sooner"), 200);
+
+        release.countDown();
+        last.get();
+        // Background work that wasn't adopted waits until the foreground job is done.
+        assertThat(ImmutableList.copyOf(order).subList(0, 3))
+                .containsExactly("adopted", "sooner", "later")
+                .inOrder();
+    }
+}
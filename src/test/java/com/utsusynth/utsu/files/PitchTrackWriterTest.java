@@ -0,0 +1,78 @@
+package com.utsusynth.utsu.files;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Injector;
+import com.utsusynth.utsu.common.data.NoteData;
+import com.utsusynth.utsu.files.PitchTrackWriter.Unit;
+import com.utsusynth.utsu.model.TestModelModule;
+import com.utsusynth.utsu.model.song.Song;
+
+/** Tests for the {@link PitchTrackWriter}, read back with the {@link PitchTrackReader}. */
+public class PitchTrackWriterTest {
+    private final Injector injector = TestModelModule.createInjector();
+    private final PitchTrackWriter writer = new PitchTrackWriter();
+    private final PitchTrackReader reader = new PitchTrackReader();
+
+    @Test
+    public void readsBackWrittenPitch() throws IOException {
+        float[] fromCents = roundTrip(Unit.CENTS_FROM_NOTE);
+        float[] fromHertz = roundTrip(Unit.HERTZ);
+
+        // One beat of C4, a beat of rest, then a beat of D4, in steps of 5 ticks.
+        assertThat(fromCents).hasLength(288);
+        assertThat(fromHertz).hasLength(288);
+        assertThat(fromCents[0]).isWithin(0.01f).of(6000);
+        assertThat(fromCents[240]).isWithin(0.01f).of(6200);
+        for (int i = 0; i < fromCents.length; i++) {
+            boolean isRest = i >= 96 && i < 192;
+            assertThat(Float.isNaN(fromCents[i])).isEqualTo(isRest);
+            assertThat(Float.isNaN(fromHertz[i])).isEqualTo(isRest);
+            if (!isRest) {
+                assertThat(fromHertz[i]).isWithin(0.01f).of(fromCents[i]);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTrackWithMissingSteps() throws IOException {
+        ByteArrayOutputStream track = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(track);
+        data.writeInt(PitchTrackWriter.MAGIC);
+        data.writeInt(PitchTrackWriter.VERSION);
+        data.writeByte(Unit.HERTZ.ordinal());
+        data.writeFloat(125);
+        data.writeInt(5); // Step length.
+        data.writeInt(0); // First step.
+        data.writeInt(Integer.MAX_VALUE); // Far more steps than follow.
+        data.writeFloat(440);
+
+        reader.readTrack(new ByteArrayInputStream(track.toByteArray()), makeSong());
+    }
+
+    // Writes a song's pitch, then reads it into another song and returns the pitch override.
+    private float[] roundTrip(Unit unit) throws IOException {
+        ByteArrayOutputStream track = new ByteArrayOutputStream();
+        writer.writeTrack(makeSong(), track, unit);
+        Song song = makeSong();
+        reader.readTrack(new ByteArrayInputStream(track.toByteArray()), song);
+        assertThat(song.getPitchSnapshot().getOverrideFirstStep()).isEqualTo(0);
+        return song.getPitchSnapshot().getOverrideCents();
+    }
+
+    private Song makeSong() {
+        Song song = injector.getInstance(Song.class);
+        song.addNotes(
+                ImmutableList.of(
+                        new NoteData(0, 480, "C4", "a"),
+                        new NoteData(960, 480, "D4", "a")));
+        song.standardizeNotes(0, 960);
+        return song;
+    }
+}
@@ -0,0 +1,61 @@
+package com.utsusynth.utsu.files;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import org.junit.Test;
+import com.google.inject.Injector;
+import com.utsusynth.utsu.model.TestModelModule;
+import com.utsusynth.utsu.model.song.Song;
+
+/** Tests for the {@link Ust12Writer}, read back with the {@link Ust12Reader}. */
+public class Ust12WriterTest {
+    private static final String SONG = String.join(
+            "\n",
+            "[#VERSION]",
+            "UST Version1.2",
+            "[#SETTING]",
+            "Tempo=120.00",
+            "[#0000]",
+            "Tempo=140.00", // UTAU repeats the song's tempo on the first note.
+            "Length=480",
+            "Lyric=a",
+            "NoteNum=60",
+            "[#0001]",
+            "Tempo=200.00",
+            "Length=480",
+            "Lyric=ka",
+            "NoteNum=62",
+            "[#TRACKEND]");
+
+    private final Injector injector = TestModelModule.createInjector();
+    private final Ust12Reader reader = injector.getInstance(Ust12Reader.class);
+    private final Ust12Writer writer = injector.getInstance(Ust12Writer.class);
+
+    @Test
+    public void tempoOfFirstNoteIsSongTempo() throws UnsupportedEncodingException {
+        Song song = reader.loadSong(SONG);
+        assertThat(song.getTempo()).isEqualTo(140.0);
+        assertThat(song.getTempoChanges()).containsExactly(480, 200.0);
+
+        // Changing the song's tempo is heard, and written only once.
+        Song newSong = song.toBuilder().setTempo(100).build();
+        assertThat(newSong.getTempoMap().getTempo(0)).isEqualTo(100.0);
+        String written = write(newSong);
+        assertThat(written.split("Tempo=", -1)).hasLength(3);
+        assertThat(written).contains("Tempo=100.00\n");
+        assertThat(written).contains("Tempo=200.00\n");
+
+        Song readBack = reader.loadSong(written);
+        assertThat(readBack.getTempo()).isEqualTo(100.0);
+        assertThat(readBack.getTempoChanges()).containsExactly(480, 200.0);
+    }
+
+    private String write(Song song) throws UnsupportedEncodingException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeSong(song, new PrintStream(output, true, "UTF-8"));
+        return output.toString("UTF-8").replace("\r\n", "\n");
+    }
+}
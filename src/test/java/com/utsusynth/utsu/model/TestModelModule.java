@@ -0,0 +1,39 @@
+package com.utsusynth.utsu.model;
+
+import java.io.File;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.util.Modules;
+import com.utsusynth.utsu.engine.FrqGenerator;
+import com.utsusynth.utsu.files.VoicebankReader;
+import com.utsusynth.utsu.model.voicebank.Voicebank;
+
+/**
+ * Overrides parts of the {@link ModelModule} so that songs can be made in tests, which run from
+ * the project directory rather than the assets directory.
+ */
+public class TestModelModule extends AbstractModule {
+    /** Makes an injector for the model, using the voicebank in the assets directory. */
+    public static Injector createInjector() {
+        return Guice.createInjector(
+                Modules.override(new ModelModule()).with(new TestModelModule()));
+    }
+
+    @Override
+    protected void configure() {
+        bind(FrqGenerator.class).toInstance(new FrqGenerator(null, new File("frq"), 256));
+    }
+
+    @Provides
+    @Singleton
+    private VoicebankReader provideVoicebankReader(Provider<Voicebank> voicebankProvider) {
+        return new VoicebankReader(
+                new File("assets/assets/voice/Iona_Beta/"),
+                new File("assets/assets/config/lyric_conversions.txt"),
+                voicebankProvider);
+    }
+}
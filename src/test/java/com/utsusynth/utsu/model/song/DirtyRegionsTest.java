@@ -0,0 +1,40 @@
+package com.utsusynth.utsu.model.song;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import com.utsusynth.utsu.common.RegionBounds;
+
+/** Tests for the {@link DirtyRegions}. */
+public class DirtyRegionsTest {
+    @Test
+    public void mergesRegionsChangedAfterRevision() {
+        DirtyRegions dirtyRegions = new DirtyRegions(0);
+        dirtyRegions.mark(1, 0, 480);
+        dirtyRegions.mark(2, 960, 1440);
+        dirtyRegions.mark(3, 1200, 1920);
+
+        assertThat(dirtyRegions.getRegionsSince(3)).isEmpty();
+        assertThat(dirtyRegions.getRegionsSince(1))
+                .containsExactly(new RegionBounds(960, 1920));
+        assertThat(dirtyRegions.getRegionsSince(0))
+                .containsExactly(new RegionBounds(0, 480), new RegionBounds(960, 1920))
+                .inOrder();
+
+        assertThat(dirtyRegions.isDirty(new RegionBounds(480, 960), 0)).isFalse();
+        assertThat(dirtyRegions.isDirty(new RegionBounds(480, 961), 0)).isTrue();
+        assertThat(dirtyRegions.isDirty(new RegionBounds(0, 480), 1)).isFalse();
+    }
+
+    @Test
+    public void treatsForgottenRevisionsAsWholeSong() {
+        DirtyRegions dirtyRegions = new DirtyRegions(5);
+        assertThat(dirtyRegions.getRegionsSince(4)).containsExactly(RegionBounds.WHOLE_SONG);
+        assertThat(dirtyRegions.getRegionsSince(5)).isEmpty();
+
+        dirtyRegions.mark(6, 0, 480);
+        dirtyRegions.markAll(7);
+        assertThat(dirtyRegions.isDirty(new RegionBounds(960, 1440), 6)).isTrue();
+        assertThat(dirtyRegions.getRegionsSince(7)).isEmpty();
+    }
+}
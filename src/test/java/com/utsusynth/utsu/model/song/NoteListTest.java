@@ -0,0 +1,54 @@
+package com.utsusynth.utsu.model.song;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import com.utsusynth.utsu.common.RegionBounds;
+
+/** Tests for the {@link NoteList}. */
+public class NoteListTest {
+    @Test
+    public void keepsDeltasAndLengthsWhenInsertingOutOfOrder() throws Exception {
+        NoteList noteList = new NoteList();
+        noteList.insertNote(makeNote("c"), 960);
+        noteList.insertNote(makeNote("a"), 0);
+        noteList.insertNote(makeNote("d"), 1920);
+        noteList.insertNote(makeNote("b"), 480);
+
+        NoteIterator notes = noteList.iterator();
+        int[] expectedPositions = {0, 480, 960, 1920};
+        int[] expectedLengths = {480, 480, 960, 240};
+        for (int i = 0; i < expectedPositions.length; i++) {
+            Note note = notes.next();
+            assertThat(notes.getCurDelta()).isEqualTo(expectedPositions[i]);
+            assertThat(note.getLength()).isEqualTo(expectedLengths[i]);
+        }
+        assertThat(notes.hasNext()).isFalse();
+    }
+
+    @Test
+    public void startsIteratingInsideBounds() throws Exception {
+        NoteList noteList = new NoteList();
+        for (int i = 0; i < 100; i++) {
+            noteList.insertNote(makeNote("a"), i * 480);
+        }
+        noteList.removeNote(480 * 50);
+
+        NoteIterator notes = noteList.boundedIterator(new RegionBounds(480 * 49 + 100, 480 * 52));
+        assertThat(notes.getCurIndex()).isEqualTo(49);
+        assertThat(notes.next().getLyric()).isEqualTo("a");
+        assertThat(notes.getCurDelta()).isEqualTo(480 * 49);
+        notes.next();
+        assertThat(notes.getCurDelta()).isEqualTo(480 * 51);
+        assertThat(notes.hasNext()).isFalse();
+        assertThat(notes.getCurIndex()).isEqualTo(51);
+    }
+
+    private static Note makeNote(String lyric) {
+        Note note = new Note();
+        note.safeSetDuration(240);
+        note.safeSetLength(240);
+        note.setLyric(lyric);
+        return note;
+    }
+}
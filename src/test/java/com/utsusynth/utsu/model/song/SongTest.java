@@ -0,0 +1,144 @@
+package com.utsusynth.utsu.model.song;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import com.google.inject.Injector;
+import com.utsusynth.utsu.common.RegionBounds;
+import com.utsusynth.utsu.common.data.EnvelopeData;
+import com.utsusynth.utsu.common.data.MutateResponse;
+import com.utsusynth.utsu.common.data.NoteData;
+import com.utsusynth.utsu.common.data.NoteUpdateData;
+import com.utsusynth.utsu.model.TestModelModule;
+
+/** Tests for the {@link Song}. */
+public class SongTest {
+    private final Injector injector = TestModelModule.createInjector();
+
+    @Test
+    public void batchStandardizesEachGroupOfChanges() {
+        Song song = makeSong(10);
+        List<MutateResponse> responses = song.startBatch().removeNote(960).removeNote(1440)
+                .addNote(new NoteData(1200, 240, "D4", "ka"))
+                .modifyNote(withEnvelopeHeight(song.getNotes().get(9), 50))
+                .apply();
+        assertThat(getPositions(song.getNotes()))
+                .containsExactly(0, 480, 1200, 1920, 2400, 2880, 3360, 3840, 4320)
+                .inOrder();
+        assertThat(song.getNotes().get(8).getEnvelope().get().getHeights()[1]).isEqualTo(50.0);
+
+        // Notes between the two groups of changes are left alone.
+        assertThat(responses).hasSize(2);
+        assertThat(getUpdatePositions(responses.get(0).getNotes()))
+                .containsExactly(480, 1200, 1920)
+                .inOrder();
+        assertThat(responses.get(0).getPrev().get().getPosition()).isEqualTo(0);
+        assertThat(responses.get(0).getNext().get().getPosition()).isEqualTo(2400);
+        assertThat(getUpdatePositions(responses.get(1).getNotes())).containsExactly(4320);
+        assertThat(responses.get(1).getPrev().get().getPosition()).isEqualTo(3840);
+        assertThat(responses.get(1).getNext().isPresent()).isFalse();
+
+        // The new note was standardized along with its neighbors.
+        assertThat(responses.get(0).getNotes().iterator().next().getTrueLyric()).isNotEmpty();
+    }
+
+    @Test
+    public void snapshotsShareNotesThatDidNotChange() {
+        Song song = makeSong(10);
+        SongSnapshot before = song.snapshot();
+        assertThat(song.snapshot()).isSameAs(before);
+
+        song.modifyNote(withEnvelopeHeight(song.getNotes().get(9), 50));
+        SongSnapshot after = song.snapshot();
+        assertThat(after.getRevision()).isGreaterThan(before.getRevision());
+        assertThat(after.getNotes().get(0)).isSameAs(before.getNotes().get(0));
+        assertThat(after.getNotes().get(4320)).isNotSameAs(before.getNotes().get(4320));
+        assertThat(after.getNotes().get(4320).getEnvelope().getHeights()[1]).isEqualTo(50.0);
+    }
+
+    @Test
+    public void editsAfterSnapshotDoNotChangeIt() {
+        Song song = makeSong(10);
+        SongSnapshot snapshot = song.snapshot();
+        double height = snapshot.getNotes().get(4320).getEnvelope().getHeights()[1];
+
+        song.modifyNote(withEnvelopeHeight(song.getNotes().get(9), height + 10));
+        song.startBatch().removeNote(0).apply();
+        assertThat(snapshot.getNumNotes()).isEqualTo(10);
+        assertThat(snapshot.getNotes().get(4320).getEnvelope().getHeights()[1])
+                .isEqualTo(height);
+
+        // Notes iterated from the snapshot are copies, so changing them is also safe.
+        snapshot.getNoteIterator(RegionBounds.WHOLE_SONG).next().setLyric("ka");
+        assertThat(snapshot.getNotes().get(0).getLyric()).isEqualTo("a");
+        assertThat(song.snapshot().getNumNotes()).isEqualTo(9);
+    }
+
+    @Test
+    public void restoresSongFromSnapshot() {
+        Song song = makeSong(4).toBuilder().addTempoChange(960, 200).setPitchStep(10).build();
+        float[] cents = new float[] {6000, Float.NaN, 6100};
+        song.setPitchOverride(3, cents);
+        SongSnapshot snapshot = song.snapshot();
+        int revision = song.getRevision();
+
+        song.startBatch().removeNote(480).apply();
+        song.clearPitchOverride();
+        Song restored = song.restore(snapshot);
+        assertThat(getPositions(restored.getNotes())).containsExactly(0, 480, 960, 1440).inOrder();
+        assertThat(restored.getTempoChanges()).containsExactly(960, 200.0);
+        assertThat(restored.getTempoMap().getTempo(960)).isEqualTo(200.0);
+        assertThat(restored.getPitchStep()).isEqualTo(10);
+        assertThat(restored.getPitchSnapshot().getStepMs()).isEqualTo(10);
+        assertThat(restored.getPitchSnapshot().getOverrideFirstStep()).isEqualTo(3);
+        assertThat(restored.getPitchSnapshot().getOverrideCents()).isEqualTo(cents);
+
+        // Renders of either song can tell they are out of date.
+        assertThat(restored.getRevision()).isGreaterThan(revision);
+        assertThat(song.getRevision()).isGreaterThan(revision);
+        int restoredRevision = restored.getRevision();
+        Song restoredAgain = restored.restore(restored.snapshot());
+        assertThat(restoredAgain.getRevision()).isGreaterThan(restoredRevision);
+    }
+
+    private static NoteData withEnvelopeHeight(NoteData note, double height) {
+        EnvelopeData envelope = note.getEnvelope().get();
+        double[] heights = envelope.getHeights().clone();
+        heights[1] = height;
+        return new NoteData(
+                note.getPosition(),
+                note.getDuration(),
+                note.getPitch(),
+                note.getLyric(),
+                new EnvelopeData(envelope.getWidths(), heights));
+    }
+
+    // Makes a song with notes every beat.
+    private Song makeSong(int numNotes) {
+        Song song = injector.getInstance(Song.class);
+        Song.Batch batch = song.startBatch();
+        for (int i = 0; i < numNotes; i++) {
+            batch.addNote(new NoteData(i * 480, 480, "C4", "a"));
+        }
+        batch.apply();
+        return song;
+    }
+
+    private static List<Integer> getPositions(List<NoteData> notes) {
+        List<Integer> positions = new ArrayList<>();
+        for (NoteData note : notes) {
+            positions.add(note.getPosition());
+        }
+        return positions;
+    }
+
+    private static List<Integer> getUpdatePositions(Iterable<NoteUpdateData> notes) {
+        List<Integer> positions = new ArrayList<>();
+        for (NoteUpdateData note : notes) {
+            positions.add(note.getPosition());
+        }
+        return positions;
+    }
+}
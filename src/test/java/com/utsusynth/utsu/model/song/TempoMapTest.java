@@ -0,0 +1,37 @@
+package com.utsusynth.utsu.model.song;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.TreeMap;
+import org.junit.Test;
+
+/** Tests for the {@link TempoMap}. */
+public class TempoMapTest {
+    @Test
+    public void followsTempoChanges() {
+        TreeMap<Integer, Double> changes = new TreeMap<>();
+        changes.put(960, 250.0); // Twice as fast from the third beat.
+        changes.put(1920, 62.5); // Twice as slow from the fifth.
+        TempoMap tempoMap = new TempoMap(125, changes);
+
+        assertThat(tempoMap.getTempo(959)).isEqualTo(125.0);
+        assertThat(tempoMap.getTempo(960)).isEqualTo(250.0);
+        assertThat(tempoMap.toRealMs(480)).isEqualTo(480.0);
+        assertThat(tempoMap.toRealMs(1440)).isEqualTo(1200.0);
+        assertThat(tempoMap.toRealMs(2400)).isEqualTo(2400.0);
+        assertThat(tempoMap.toRealMs(480, 960)).isEqualTo(720.0);
+        assertThat(tempoMap.getAverageTempo(480, 960)).isEqualTo(125 * 960 / 720.0);
+
+        assertThat(tempoMap.toPositionMs(1200)).isEqualTo(1440.0);
+        assertThat(tempoMap.toPositionMs(2400)).isEqualTo(2400.0);
+    }
+
+    @Test
+    public void replacesInitialTempoWithChangeAtStart() {
+        TreeMap<Integer, Double> changes = new TreeMap<>();
+        changes.put(0, 250.0);
+        TempoMap tempoMap = new TempoMap(125, changes);
+        assertThat(tempoMap.getTempo(0)).isEqualTo(250.0);
+        assertThat(tempoMap.toRealMs(960)).isEqualTo(480.0);
+    }
+}
@@ -0,0 +1,126 @@
+package com.utsusynth.utsu.model.song.pitch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import com.google.common.collect.ImmutableList;
+import com.utsusynth.utsu.common.data.PitchbendData;
+import com.utsusynth.utsu.model.song.pitch.portamento.PortamentoFactory;
+
+/** Tests for the {@link PitchCurve}. */
+public class PitchCurveTest {
+    // Two portamentos, the second one pulled down by 5 tenths.
+    private static final PitchbendData FIRST_NOTE = new PitchbendData(
+            ImmutableList.of(-40.0),
+            ImmutableList.of(20.0, 30.0),
+            ImmutableList.of(-5.0),
+            ImmutableList.of("", "r"));
+    // A straight portamento that starts inside the first note, plus a vibrato.
+    private static final PitchbendData SECOND_NOTE = new PitchbendData(
+            ImmutableList.of(-30.0),
+            ImmutableList.of(60.0),
+            ImmutableList.of(),
+            ImmutableList.of("s"),
+            new int[] {50, 40, 30, 20, 20, 0, 5, 0, 10, 0});
+
+    private PitchCurve pitchCurve;
+
+    @Before
+    public void setUp() {
+        pitchCurve = new PitchCurve(new PortamentoFactory());
+        pitchCurve.addPitchbends(480, 240, FIRST_NOTE, 60, 62);
+        pitchCurve.addPitchbends(720, 240, SECOND_NOTE, 62, 57);
+    }
+
+    @Test
+    public void rendersOverlappingNotes() {
+        assertThat(pitchCurve.renderPitchbends(80, 200, 62)).isEqualTo(
+                "84#7#869E+D/D/O/y/3/7/9//AA#39#AA/X+t+D9a8w8G7d6z6J5g424M#17#4M4R4a4c4P363x354O4k"
+                        + "4t4k4P363x374R4m4t4i4L3/4B4M#9#");
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo(
+                "H0#1#H0HKGgF3FNEjD6DQCmB9BTApAA#17#AAAEANAPAC/u/l/tABAXAgAXAC/u/l/vAEAZAgAV///z/1"
+                        + "AA#9#");
+    }
+
+    @Test
+    public void removesOneNote() {
+        pitchCurve.removePitchbends(720, 240, SECOND_NOTE);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo("AA#64#");
+        assertThat(pitchCurve.renderPitchbends(80, 100, 62)).isEqualTo(
+                "84#7#869E+D/D/O/y/3/7/9//AA#2#");
+    }
+
+    @Test
+    public void appliesBatchesAllAtOnce() {
+        String second = pitchCurve.renderPitchbends(136, 200, 57);
+        PitchCurve.Batch batch = pitchCurve.startBatch();
+        batch.removePitchbends(480, 240, FIRST_NOTE);
+        batch.removePitchbends(720, 240, SECOND_NOTE);
+        batch.addPitchbends(480, 240, FIRST_NOTE, 60, 62);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isSameAs(second);
+
+        batch.apply();
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo("AA#64#");
+        assertThat(pitchCurve.renderPitchbends(80, 100, 62)).isEqualTo(
+                "84#7#869E+D/D/O/y/3/7/9//AA#2#");
+    }
+
+    @Test
+    public void reusesRendersUntilTheirPitchbendsChange() {
+        String first = pitchCurve.renderPitchbends(80, 100, 62);
+        String second = pitchCurve.renderPitchbends(136, 200, 57);
+        assertThat(pitchCurve.renderPitchbends(80, 100, 62)).isSameAs(first);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isSameAs(second);
+
+        // Only the second note's steps are affected by changing its pitchbends.
+        pitchCurve.removePitchbends(720, 240, SECOND_NOTE);
+        assertThat(pitchCurve.renderPitchbends(80, 100, 62)).isSameAs(first);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo("AA#64#");
+        pitchCurve.addPitchbends(720, 240, SECOND_NOTE, 62, 57);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo(second);
+    }
+
+    @Test
+    public void snapshotsIgnoreLaterEdits() {
+        PitchCurve.Snapshot snapshot = pitchCurve.snapshot();
+        String second = snapshot.renderPitchbends(136, 200, 57);
+        pitchCurve.removePitchbends(720, 240, SECOND_NOTE);
+        assertThat(snapshot.renderPitchbends(136, 200, 57)).isEqualTo(second);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo("AA#64#");
+
+        // Strings rendered from an old snapshot must not be reused by newer ones.
+        pitchCurve.snapshot().renderPitchbends(80, 100, 62);
+        PitchCurve.Snapshot oldSnapshot = pitchCurve.snapshot();
+        pitchCurve.addPitchbends(720, 240, SECOND_NOTE, 62, 57);
+        oldSnapshot.renderPitchbends(136, 200, 62);
+        assertThat(pitchCurve.renderPitchbends(136, 200, 62))
+                .isNotEqualTo(oldSnapshot.renderPitchbends(136, 200, 62));
+    }
+
+    @Test
+    public void overridesSomeSteps() {
+        String second = pitchCurve.renderPitchbends(136, 200, 57);
+        pitchCurve.setPitchOverride(136, new float[] {5700, Float.NaN, 5750});
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57))
+                .isEqualTo("AA" + "H0" + "Ay" + second.substring("H0#1#H0".length()));
+        pitchCurve.clearPitchOverride();
+        assertThat(pitchCurve.renderPitchbends(136, 200, 57)).isEqualTo(second);
+    }
+
+    @Test
+    public void evaluatesLongerStepsAtTheSamePositions() {
+        PitchCurve coarseCurve = new PitchCurve(new PortamentoFactory(), 10);
+        coarseCurve.addPitchbends(480, 240, FIRST_NOTE, 60, 62);
+        double[] coarse = new double[61];
+        coarseCurve.snapshot().evaluate(40, 100, 620, coarse, new boolean[coarse.length]);
+
+        PitchCurve fineCurve = new PitchCurve(new PortamentoFactory());
+        fineCurve.addPitchbends(480, 240, FIRST_NOTE, 60, 62);
+        double[] fine = new double[121];
+        fineCurve.snapshot().evaluate(80, 200, 620, fine, new boolean[fine.length]);
+        for (int i = 0; i < coarse.length; i++) {
+            assertThat(coarse[i]).isEqualTo(fine[i * 2]);
+        }
+    }
+}
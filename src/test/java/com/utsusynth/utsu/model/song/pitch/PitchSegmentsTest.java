@@ -0,0 +1,57 @@
+package com.utsusynth.utsu.model.song.pitch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Random;
+import org.junit.Test;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.TreeRangeSet;
+
+/** Tests for {@link PitchSegments}. */
+public class PitchSegmentsTest {
+    private static final PitchMutation FLAT = positionMs -> 0;
+
+    @Test
+    public void latestNoteWinsWhereSegmentsOverlap() {
+        PitchSegments<PitchMutation> segments = new PitchSegments<>();
+        segments.add(100, 0, 9, FLAT); // Segment 0.
+        segments.add(200, 5, 7, FLAT); // Segment 1.
+        segments.add(150, 8, 12, FLAT); // Segment 2.
+        int[] out = new int[16];
+        segments.resolve(-1, 14, out);
+        assertThat(out).isEqualTo(new int[] {-1, 0, 0, 0, 0, 0, 1, 1, 1, 2, 2, 2, 2, 2, -1, -1});
+
+        segments.removeNotes(ImmutableSet.of(200), TreeRangeSet.create());
+        segments.resolve(4, 8, out);
+        assertThat(out[0]).isEqualTo(0);
+        assertThat(out[3]).isEqualTo(0);
+        assertThat(out[4]).isEqualTo(1); // Segment 2 has moved up to take its place.
+    }
+
+    @Test
+    public void matchesScanningEverySegment() {
+        Random random = new Random(0);
+        PitchSegments<PitchMutation> segments = new PitchSegments<>();
+        int[] notes = new int[200];
+        int[] firstSteps = new int[200];
+        int[] lastSteps = new int[200];
+        for (int i = 0; i < 200; i++) {
+            notes[i] = random.nextInt(50) * 10;
+            firstSteps[i] = random.nextInt(1000);
+            lastSteps[i] = firstSteps[i] + random.nextInt(30);
+            segments.add(notes[i], firstSteps[i], lastSteps[i], FLAT);
+        }
+        int[] out = new int[1100];
+        segments.resolve(-50, 1049, out);
+        for (int step = -50; step < 1050; step++) {
+            int expected = -1;
+            for (int i = 0; i < 200; i++) {
+                if (firstSteps[i] <= step && step <= lastSteps[i]
+                        && (expected < 0 || notes[i] > notes[expected])) {
+                    expected = i;
+                }
+            }
+            assertThat(out[step + 50]).isEqualTo(expected);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.utsusynth.utsu.model.song.pitch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compares the {@link PitchStringEncoder} with the string concatenation it replaced. Run main, or
+ * run with -prof gc to compare allocation rates as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PitchStringBenchmark {
+    private static final int NUM_STEPS = 2000; // A 10-second note.
+
+    private final PitchStringEncoder encoder = new PitchStringEncoder();
+    private int[] cents;
+    private int[] repeats; // How many times each value repeats, usually none.
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        cents = new int[NUM_STEPS];
+        repeats = new int[NUM_STEPS];
+        for (int i = 0; i < NUM_STEPS; i++) {
+            cents[i] = random.nextInt(4000) - 2000;
+            repeats[i] = random.nextInt(10) == 0 ? random.nextInt(20) + 1 : 0;
+        }
+    }
+
+    @Benchmark
+    public String encoder() {
+        encoder.reset();
+        for (int i = 0; i < NUM_STEPS; i++) {
+            encoder.appendCents(cents[i]);
+            if (repeats[i] > 0) {
+                encoder.appendRepeats(repeats[i]);
+            }
+        }
+        return encoder.toString();
+    }
+
+    @Benchmark
+    public String concatenation() {
+        String result = "";
+        for (int i = 0; i < NUM_STEPS; i++) {
+            result += convertTo12Bit(cents[i]);
+            if (repeats[i] > 0) {
+                result += String.format("#%d#", repeats[i]);
+            }
+        }
+        return result;
+    }
+
+    // How pitch values were encoded before the encoder existed.
+    private static String convertTo12Bit(int convertMe) {
+        if (convertMe < 0) {
+            convertMe += 4096;
+        }
+        convertMe = Math.max(0, Math.min(4095, convertMe));
+        String result = "";
+        for (int sixBitNumber : ImmutableList.of(convertMe / 64, convertMe % 64)) {
+            if (sixBitNumber >= 0 && sixBitNumber < 26) {
+                result += (char) (sixBitNumber + 'A');
+            } else if (sixBitNumber >= 26 && sixBitNumber < 52) {
+                result += (char) (sixBitNumber - 26 + 'a');
+            } else if (sixBitNumber >= 52 && sixBitNumber < 62) {
+                result += (char) (sixBitNumber - 52 + '0');
+            } else if (sixBitNumber == 62) {
+                result += '+';
+            } else {
+                result += '/';
+            }
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PitchStringBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,19 @@
+package com.utsusynth.utsu.model.song.pitch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Tests for the {@link Vibrato}. */
+public class VibratoTest {
+    @Test
+    public void rangeMatchesSinglePositions() {
+        // A ten-second vibrato that speeds up, with a phase in and phase out.
+        Vibrato vibrato = new Vibrato(1000, 11000, 180, 60, 20, 30, 25, 10, 40);
+        double[] range = new double[2500];
+        vibrato.applyRange(500, 5, range, 100, 2400);
+        for (int i = 0; i < 2400; i++) {
+            assertThat(range[100 + i]).isWithin(1e-9).of(vibrato.apply(500 + i * 5));
+        }
+    }
+}